@@ -0,0 +1,133 @@
+package org.eclipse.californium.scandium.examples;
+
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.UnknownHostException;
+import java.util.Locale;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.californium.elements.util.SerialExecutor;
+import org.eclipse.californium.scandium.DTLSConnector;
+import org.eclipse.californium.scandium.dtls.Connection;
+import org.eclipse.californium.scandium.dtls.InMemoryConnectionStore;
+import org.eclipse.californium.scandium.dtls.SessionId;
+import org.eclipse.californium.scandium.dtls.SessionTicket;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Lookup and eviction cost of a connection store filled with the given number
+ * of connections, each holding a resumable session. The heap taken per
+ * connection is printed once the store is filled.
+ *
+ * The connections are created from the ticket of a session negotiated once,
+ * instead of by a handshake each, so the per connection heap excludes the
+ * record layer state of an established connection, which about doubles it.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class ConnectionStoreBenchmark {
+
+	@Param({ "1000", "10000", "100000" })
+	public int connections;
+
+	private SessionTicket ticket;
+	private InMemoryConnectionStore store;
+	private InMemoryConnectionStore evictingStore;
+	private InetSocketAddress[] addresses;
+	private int next;
+
+	@Setup
+	public void setUp() throws Exception {
+		ticket = negotiateTicket();
+
+		long before = usedHeap();
+		store = new InMemoryConnectionStore(connections, TimeUnit.MINUTES.toSeconds(30));
+		addresses = fill(store, 0);
+		long after = usedHeap();
+		System.out.printf(Locale.ROOT, "%n%d connections take %d bytes of heap each%n", connections,
+				(after - before) / connections);
+
+		// a stale threshold of 0 evicts the least recently used connection whenever the store is full
+		evictingStore = new InMemoryConnectionStore(connections, 0);
+		fill(evictingStore, connections);
+		next = 2 * connections;
+	}
+
+	@Benchmark
+	public Connection lookup() {
+		return store.get(addresses[ThreadLocalRandom.current().nextInt(connections)]);
+	}
+
+	@Benchmark
+	public boolean putEvicting() throws UnknownHostException {
+		return evictingStore.put(connection(address(next++)));
+	}
+
+	private InetSocketAddress[] fill(InMemoryConnectionStore target, int first) throws UnknownHostException {
+		// as a connector without connection id support does
+		target.attach(null);
+		InetSocketAddress[] filled = new InetSocketAddress[connections];
+		for (int i = 0; i < connections; i++) {
+			filled[i] = address(first + i);
+			target.put(connection(filled[i]));
+		}
+		return filled;
+	}
+
+	private Connection connection(InetSocketAddress peer) {
+		Connection connection = new Connection(ticket, new SessionId(), peer);
+		// the store only takes connections with an executor, as the connector's are
+		connection.setExecutor(new SerialExecutor(Runnable::run));
+		return connection;
+	}
+
+	/**
+	 * @return a distinct peer address for each index, as many devices behind
+	 *         a single port would have
+	 */
+	private static InetSocketAddress address(int index) throws UnknownHostException {
+		byte[] ip = { 10, (byte) (index >> 16), (byte) (index >> 8), (byte) index };
+		return new InetSocketAddress(InetAddress.getByAddress(ip), 5684 + (index >>> 24));
+	}
+
+	private static SessionTicket negotiateTicket() throws Exception {
+		String cipherSuite = "TLS_PSK_WITH_AES_128_CBC_SHA256";
+		ExampleDTLSServer server = new ExampleDTLSServer(Peers.serverConfig("-cipherSuites", cipherSuite));
+		server.startServer();
+		InetSocketAddress peer = Peers.loopback(server.getAddress());
+		DTLSConnector client = new DTLSConnector(
+				Peers.clientConfigBuilder(peer.getPort(), "-cipherSuites", cipherSuite).build());
+		try {
+			client.start();
+			Peers.handshake(client, peer);
+			return client.getSessionByAddress(peer).getSessionTicket();
+		} finally {
+			client.destroy();
+			server.stopServer();
+		}
+	}
+
+	private static long usedHeap() throws InterruptedException {
+		for (int i = 0; i < 3; i++) {
+			System.gc();
+			Thread.sleep(100);
+		}
+		return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+	}
+}
@@ -0,0 +1,108 @@
+package org.eclipse.californium.scandium.examples;
+
+import java.net.InetSocketAddress;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.californium.elements.AddressEndpointContext;
+import org.eclipse.californium.elements.RawData;
+import org.eclipse.californium.scandium.DTLSConnector;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.slf4j.LoggerFactory;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.helpers.NOPAppender;
+
+/**
+ * Allocation of an application record echoed by a server in FULL operation,
+ * meant to be run with JMH's GC profiler, {@code -prof gc}. Its
+ * {@code gc.alloc.rate.norm} is the bytes allocated per round trip by both
+ * peers, so running it before and after a change to the echo path shows the
+ * change's share.
+ *
+ * Unlike in the other benchmarks the server logs its received messages, into
+ * an appender dropping them, as the log is sampled by {@code -logSampling}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EchoAllocationBenchmark {
+
+	@Param({ "1", "1000" })
+	public int logSampling;
+
+	@Param({ "16" })
+	public int payloadSize;
+
+	private ExampleDTLSServer server;
+	private DTLSConnector client;
+	private AddressEndpointContext peerContext;
+	private byte[] payload;
+	private NOPAppender<ILoggingEvent> dropped;
+	private volatile CompletableFuture<RawData> echo;
+
+	@Setup
+	public void setUp() throws Exception {
+		Logger serverLogger = (Logger) LoggerFactory.getLogger(ExampleDTLSServer.class);
+		dropped = new NOPAppender<>();
+		dropped.setContext(serverLogger.getLoggerContext());
+		dropped.start();
+		serverLogger.addAppender(dropped);
+		serverLogger.setAdditive(false);
+		serverLogger.setLevel(Level.INFO);
+
+		String cipherSuite = "TLS_PSK_WITH_AES_128_CBC_SHA256";
+		server = new ExampleDTLSServer(Peers.serverConfig("-cipherSuites", cipherSuite, "-operation", "FULL",
+				"-logSampling", Integer.toString(logSampling)));
+		server.startServer();
+		InetSocketAddress peer = Peers.loopback(server.getAddress());
+		peerContext = new AddressEndpointContext(peer);
+		payload = new byte[payloadSize];
+
+		client = new DTLSConnector(Peers.clientConfigBuilder(peer.getPort(), "-cipherSuites", cipherSuite).build());
+		client.setRawDataReceiver(raw -> {
+			CompletableFuture<RawData> pending = echo;
+			// the echo of the record triggering the handshake may arrive late
+			if (pending != null && raw.getSize() == payloadSize) {
+				pending.complete(raw);
+			}
+		});
+		client.start();
+		Peers.handshake(client, peer);
+	}
+
+	@TearDown
+	public void tearDown() {
+		client.destroy();
+		server.stopServer();
+		Logger serverLogger = (Logger) LoggerFactory.getLogger(ExampleDTLSServer.class);
+		serverLogger.setLevel(null);
+		serverLogger.setAdditive(true);
+		serverLogger.detachAppender(dropped);
+		dropped.stop();
+	}
+
+	@Benchmark
+	public RawData roundTrip() throws Exception {
+		CompletableFuture<RawData> pending = new CompletableFuture<>();
+		echo = pending;
+		client.send(RawData.outbound(payload, peerContext, null, false));
+		return pending.get(Peers.TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+	}
+}
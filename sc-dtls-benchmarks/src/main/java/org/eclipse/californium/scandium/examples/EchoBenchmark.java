@@ -0,0 +1,80 @@
+package org.eclipse.californium.scandium.examples;
+
+import java.net.InetSocketAddress;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.californium.elements.AddressEndpointContext;
+import org.eclipse.californium.elements.RawData;
+import org.eclipse.californium.scandium.DTLSConnector;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Round trip time of an application record echoed by a server in FULL
+ * operation, over an established connection.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EchoBenchmark {
+
+	@Param({ "TLS_PSK_WITH_AES_128_CBC_SHA256", "TLS_ECDHE_ECDSA_WITH_AES_128_CBC_SHA256" })
+	public String cipherSuite;
+
+	@Param({ "16", "1024" })
+	public int payloadSize;
+
+	private ExampleDTLSServer server;
+	private DTLSConnector client;
+	private AddressEndpointContext peerContext;
+	private byte[] payload;
+	private volatile CompletableFuture<RawData> echo;
+
+	@Setup
+	public void setUp() throws Exception {
+		server = new ExampleDTLSServer(Peers.serverConfig("-cipherSuites", cipherSuite, "-operation", "FULL"));
+		server.startServer();
+		InetSocketAddress peer = Peers.loopback(server.getAddress());
+		peerContext = new AddressEndpointContext(peer);
+		payload = new byte[payloadSize];
+
+		client = new DTLSConnector(Peers.clientConfigBuilder(peer.getPort(), "-cipherSuites", cipherSuite).build());
+		client.setRawDataReceiver(raw -> {
+			CompletableFuture<RawData> pending = echo;
+			// the echo of the record triggering the handshake may arrive late
+			if (pending != null && raw.getSize() == payloadSize) {
+				pending.complete(raw);
+			}
+		});
+		client.start();
+		Peers.handshake(client, peer);
+	}
+
+	@TearDown
+	public void tearDown() {
+		client.destroy();
+		server.stopServer();
+	}
+
+	@Benchmark
+	public RawData roundTrip() throws Exception {
+		CompletableFuture<RawData> pending = new CompletableFuture<>();
+		echo = pending;
+		client.send(RawData.outbound(payload, peerContext, null, false));
+		return pending.get(Peers.TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+	}
+}
@@ -0,0 +1,78 @@
+package org.eclipse.californium.scandium.examples;
+
+import java.net.InetSocketAddress;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.californium.scandium.DTLSConnector;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Latency of a full handshake over loopback, for each cipher suite the
+ * applications are configured with by default and each client authentication
+ * mode. Client authentication does not apply to PSK.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class HandshakeBenchmark {
+
+	@Param({ "TLS_PSK_WITH_AES_128_CBC_SHA256", "TLS_ECDHE_ECDSA_WITH_AES_128_CBC_SHA256" })
+	public String cipherSuite;
+
+	@Param({ "DISABLED", "WANTED", "NEEDED" })
+	public String clientAuth;
+
+	private ExampleDTLSServer server;
+	private DTLSConnector client;
+	private InetSocketAddress peer;
+
+	@Setup
+	public void setUp() throws Exception {
+		server = new ExampleDTLSServer(Peers.serverConfig("-cipherSuites", cipherSuite, "-clientAuth", clientAuth,
+				"-operation", "BASIC"));
+		server.startServer();
+		peer = Peers.loopback(server.getAddress());
+
+		client = new DTLSConnector(
+				Peers.clientConfigBuilder(peer.getPort(), "-cipherSuites", cipherSuite, "-clientAuth", clientAuth)
+						.build());
+		client.start();
+	}
+
+	@TearDown
+	public void tearDown() {
+		client.destroy();
+		server.stopServer();
+	}
+
+	/**
+	 * Forgets the previous session on both sides, so that no abbreviated
+	 * handshake is done and the server's connection store does not fill up.
+	 * Per invocation setup is fine here, as a handshake takes milliseconds.
+	 */
+	@Setup(Level.Invocation)
+	public void clearState() {
+		client.clearConnectionState();
+		server.softResetServer();
+	}
+
+	@Benchmark
+	public void fullHandshake() throws Exception {
+		Peers.handshake(client, peer);
+	}
+}
@@ -0,0 +1,160 @@
+package org.eclipse.californium.scandium.examples;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.californium.elements.AddressEndpointContext;
+import org.eclipse.californium.elements.EndpointContext;
+import org.eclipse.californium.elements.MessageCallback;
+import org.eclipse.californium.elements.RawData;
+import org.eclipse.californium.scandium.DTLSConnector;
+import org.eclipse.californium.scandium.config.DtlsConnectorConfig;
+
+import com.beust.jcommander.JCommander;
+
+/**
+ * Sets up the example server and client in-process, configured through their
+ * command line options, as the applications themselves are.
+ * 
+ * Both examples use the same package and some of the same class names, so only
+ * the server is on the classpath. The client is bundled as a jar and loaded on
+ * its own, its classes of that package don't mix with the server's.
+ */
+final class Peers {
+	static final long TIMEOUT_MILLIS = 5000;
+
+	private static final String CLIENT_JAR = "/peers/sc-dtls-example-client.jar";
+	private static final String EXAMPLES_PACKAGE = Peers.class.getPackage().getName() + ".";
+
+	private static ClassLoader clientLoader;
+
+	private Peers() {
+	}
+
+	/**
+	 * @return a server configuration on an ephemeral port, with the given
+	 *         further options
+	 */
+	static ExampleDTLSServerConfig serverConfig(String... args) {
+		ExampleDTLSServerConfig config = new ExampleDTLSServerConfig();
+		new JCommander(config).parse(withPort(0, args));
+		return config;
+	}
+
+	/**
+	 * @return the example client's connector configuration for the given
+	 *         server port, with the given further options
+	 */
+	static DtlsConnectorConfig.Builder clientConfigBuilder(int port, String... args) throws Exception {
+		ClassLoader loader = clientLoader();
+		Object config = loader.loadClass(EXAMPLES_PACKAGE + "ExampleDTLSClientConfig").getConstructor().newInstance();
+		new JCommander(config).parse(withPort(port, args));
+		Method create = loader.loadClass(EXAMPLES_PACKAGE + "ExampleDTLSClient").getDeclaredMethod("createConfigBuilder",
+				config.getClass());
+		create.setAccessible(true);
+		try {
+			return (DtlsConnectorConfig.Builder) create.invoke(null, config);
+		} catch (InvocationTargetException e) {
+			Throwable cause = e.getCause();
+			throw cause instanceof Exception ? (Exception) cause : e;
+		}
+	}
+
+	static InetSocketAddress loopback(InetSocketAddress address) {
+		return new InetSocketAddress(InetAddress.getLoopbackAddress(), address.getPort());
+	}
+
+	/**
+	 * Sends an empty record to the peer and waits until the connection to it is
+	 * established, which takes a full handshake unless there is one already.
+	 */
+	static void handshake(DTLSConnector connector, InetSocketAddress peer) throws Exception {
+		CompletableFuture<Void> established = new CompletableFuture<>();
+		connector.send(RawData.outbound(new byte[0], new AddressEndpointContext(peer), new MessageCallback() {
+			@Override
+			public void onConnecting() {
+			}
+
+			@Override
+			public void onDtlsRetransmission(int flight) {
+			}
+
+			@Override
+			public void onContextEstablished(EndpointContext context) {
+				established.complete(null);
+			}
+
+			@Override
+			public void onSent() {
+			}
+
+			@Override
+			public void onError(Throwable error) {
+				established.completeExceptionally(error);
+			}
+		}, false));
+		established.get(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+	}
+
+	private static synchronized ClassLoader clientLoader() throws IOException {
+		if (clientLoader == null) {
+			Path jar = Files.createTempFile("sc-dtls-example-client", ".jar");
+			jar.toFile().deleteOnExit();
+			try (InputStream in = Peers.class.getResourceAsStream(CLIENT_JAR)) {
+				if (in == null) {
+					throw new IllegalStateException(CLIENT_JAR + " is missing, build the benchmarks with maven");
+				}
+				Files.copy(in, jar, StandardCopyOption.REPLACE_EXISTING);
+			}
+			clientLoader = new ClientClassLoader(jar.toUri().toURL(), Peers.class.getClassLoader());
+		}
+		return clientLoader;
+	}
+
+	/**
+	 * Loads the examples package from the client jar, everything else (Scandium,
+	 * JCommander, logging) from the benchmarks, so the client's configuration
+	 * builder is the one the benchmarks' connectors take.
+	 */
+	private static class ClientClassLoader extends URLClassLoader {
+		private ClientClassLoader(URL jar, ClassLoader parent) {
+			super(new URL[] { jar }, parent);
+		}
+
+		@Override
+		protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+			if (!name.startsWith(EXAMPLES_PACKAGE)) {
+				return super.loadClass(name, resolve);
+			}
+			synchronized (getClassLoadingLock(name)) {
+				Class<?> loaded = findLoadedClass(name);
+				if (loaded == null) {
+					loaded = findClass(name);
+				}
+				if (resolve) {
+					resolveClass(loaded);
+				}
+				return loaded;
+			}
+		}
+	}
+
+	private static String[] withPort(int port, String... args) {
+		String[] all = new String[args.length + 2];
+		all[0] = "-port";
+		all[1] = String.valueOf(port);
+		System.arraycopy(args, 0, all, 2, args.length);
+		return all;
+	}
+}
@@ -0,0 +1,67 @@
+package org.eclipse.californium.scandium.examples;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The cost of the steps behind the thread starter's commands: constructing an
+ * {@link ExampleDTLSServer}, a full reset (construct, start and stop) and a
+ * soft reset of a running server.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ServerLifecycleBenchmark {
+
+	@Param({ "TLS_PSK_WITH_AES_128_CBC_SHA256", "TLS_ECDHE_ECDSA_WITH_AES_128_CBC_SHA256" })
+	public String cipherSuite;
+
+	private ExampleDTLSServerConfig config;
+	private ExampleDTLSServer running;
+
+	@Setup
+	public void setUp() {
+		config = Peers.serverConfig("-cipherSuites", cipherSuite, "-operation", "FULL");
+		running = new ExampleDTLSServer(config);
+		running.startServer();
+	}
+
+	@TearDown
+	public void tearDown() {
+		running.stopServer();
+	}
+
+	@Benchmark
+	public ExampleDTLSServer construct() {
+		return new ExampleDTLSServer(config);
+	}
+
+	@Benchmark
+	public ExampleDTLSServer reset() {
+		ExampleDTLSServer server = new ExampleDTLSServer(config);
+		server.startServer();
+		server.stopServer();
+		return server;
+	}
+
+	@Benchmark
+	public ExampleDTLSServer softReset() {
+		running.softResetServer();
+		return running;
+	}
+}
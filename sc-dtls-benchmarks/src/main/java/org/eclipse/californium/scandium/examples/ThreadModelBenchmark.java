@@ -0,0 +1,102 @@
+package org.eclipse.californium.scandium.examples;
+
+import java.net.InetSocketAddress;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.californium.elements.AddressEndpointContext;
+import org.eclipse.californium.elements.RawData;
+import org.eclipse.californium.scandium.DTLSConnector;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Echo throughput of a PSK server in FULL operation for each thread model,
+ * with several clients, one per benchmark thread, echoing concurrently.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(4)
+@Fork(1)
+public class ThreadModelBenchmark {
+	private static final String CIPHER_SUITE = "TLS_PSK_WITH_AES_128_CBC_SHA256";
+
+	@State(Scope.Benchmark)
+	public static class Server {
+		@Param({ "INTERNAL", "FIXED", "VIRTUAL" })
+		public String executor;
+
+		@Param({ "1", "2", "4" })
+		public String connectionThreads;
+
+		@Param({ "1", "2" })
+		public String receiverThreads;
+
+		private ExampleDTLSServer server;
+		private InetSocketAddress address;
+
+		@Setup
+		public void setUp() {
+			server = new ExampleDTLSServer(Peers.serverConfig("-cipherSuites", CIPHER_SUITE, "-operation", "FULL",
+					"-maxConnections", "16", "-executor", executor, "-connectionThreads", connectionThreads,
+					"-receiverThreads", receiverThreads));
+			server.startServer();
+			address = Peers.loopback(server.getAddress());
+		}
+
+		@TearDown
+		public void tearDown() {
+			server.stopServer();
+		}
+	}
+
+	@State(Scope.Thread)
+	public static class Client {
+		private DTLSConnector connector;
+		private AddressEndpointContext peerContext;
+		private final byte[] payload = new byte[64];
+		private volatile CompletableFuture<RawData> echo;
+
+		@Setup
+		public void setUp(Server server) throws Exception {
+			connector = new DTLSConnector(Peers.clientConfigBuilder(server.address.getPort(), "-cipherSuites",
+					CIPHER_SUITE, "-receiverThreads", "1", "-connectionThreads", "1").build());
+			connector.setRawDataReceiver(raw -> {
+				CompletableFuture<RawData> pending = echo;
+				// the echo of the record triggering the handshake may arrive late
+				if (pending != null && raw.getSize() == payload.length) {
+					pending.complete(raw);
+				}
+			});
+			connector.start();
+			peerContext = new AddressEndpointContext(server.address);
+			Peers.handshake(connector, server.address);
+		}
+
+		@TearDown
+		public void tearDown() {
+			connector.destroy();
+		}
+	}
+
+	@Benchmark
+	public RawData echo(Client client) throws Exception {
+		CompletableFuture<RawData> pending = new CompletableFuture<>();
+		client.echo = pending;
+		client.connector.send(RawData.outbound(client.payload, client.peerContext, null, false));
+		return pending.get(Peers.TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+	}
+}
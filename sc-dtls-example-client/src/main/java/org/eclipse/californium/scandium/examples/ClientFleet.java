@@ -0,0 +1,389 @@
+package org.eclipse.californium.scandium.examples;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.security.GeneralSecurityException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.eclipse.californium.elements.AddressEndpointContext;
+import org.eclipse.californium.elements.EndpointContext;
+import org.eclipse.californium.elements.MessageCallback;
+import org.eclipse.californium.elements.RawData;
+import org.eclipse.californium.scandium.config.DtlsConnectorConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Emulates a fleet of devices, each a client with its own identity and
+ * connection, toward one server (operation FLEET). After its handshake, each
+ * client sends a record at the message interval, which the server echoes.
+ * Handshake and echo latencies are reported along with the heap taken per
+ * client, which is checked against the configured budget.
+ *
+ * As a server tells its peers apart by their addresses, each client still
+ * has a socket of its own. Everything else is shared: the clients' sockets are
+ * read by a few selector threads instead of receiver threads per client,
+ * records and handshakes are processed by one pool of connection threads,
+ * which also runs the retransmission timers, and the connector configuration
+ * is shared by the clients with the same identity. With a PSK file, each
+ * client is a device of its own. The number of open files may have to be
+ * raised for large fleets.
+ */
+public class ClientFleet {
+	private static final Logger LOG = LoggerFactory.getLogger(ClientFleet.class);
+	private static final long TICK_MILLIS = 1;
+	private static final int MAX_DATAGRAM_SIZE = 0x10000;
+	// garbage collections requested to settle the heap before it is measured
+	private static final int SETTLE_COLLECTIONS = 3;
+
+	private final ExampleDTLSClientConfig config;
+	private final InetSocketAddress peer;
+	private final AddressEndpointContext peerContext;
+	private final List<FleetClient> clients = new ArrayList<>();
+	private final List<FleetReceiver> receivers = new ArrayList<>();
+	private final Map<String, DtlsConnectorConfig> connectorConfigs = new HashMap<>();
+	private final LatencyHistogram handshakeLatencies = new LatencyHistogram();
+	private final LatencyHistogram echoLatencies = new LatencyHistogram();
+	private final AtomicLong established = new AtomicLong();
+	private final AtomicLong failed = new AtomicLong();
+	private final AtomicLong sent = new AtomicLong();
+	private final AtomicLong echoed = new AtomicLong();
+	private final AtomicLong dropped = new AtomicLong();
+	private ScheduledExecutorService executor;
+
+	public ClientFleet(ExampleDTLSClientConfig config) {
+		this.config = config;
+		this.peer = new InetSocketAddress(InetAddress.getLoopbackAddress(), config.getPort());
+		this.peerContext = new AddressEndpointContext(peer);
+	}
+
+	public void run() throws GeneralSecurityException, IOException, InterruptedException {
+		List<String> identities = Collections.singletonList(config.getPskIdentity());
+		if (config.getPskFile() != null) {
+			identities = FilePskStore.shared(config.getPskFile(), config.isPskFileMapped())
+					.getIdentities(config.getLoadClients());
+		}
+		// a scheduled pool, which the connectors also use as their timer instead of creating one each
+		executor = (ScheduledExecutorService) ThreadModel.createSharedExecutor(ConnectorExecutor.FIXED,
+				config.getConnectionThreads());
+		for (int i = 0; i < ThreadModel.receiverThreads(config.getReceiverThreads()); i++) {
+			FleetReceiver receiver = new FleetReceiver(i);
+			receiver.start();
+			receivers.add(receiver);
+		}
+		long heapBefore = settledHeap();
+		for (int i = 0; i < config.getLoadClients(); i++) {
+			String identity = identities.get(i % identities.size());
+			FleetClient client = new FleetClient(
+					new FleetConnector(connectorConfig(identity), receivers.get(i % receivers.size())));
+			client.connector.setExecutor(executor);
+			client.connector.setRawDataReceiver(client::receive);
+			client.connector.start();
+			clients.add(client);
+		}
+		LOG.info("Starting {} clients with {} identities toward {} at {} handshakes/s (0 for as fast as possible)",
+				clients.size(), identities.size(), peer, config.getLoadRate());
+
+		long start = System.nanoTime();
+		ScheduledFuture<?> ticker = executor.scheduleAtFixedRate(new Ticker(start), 0, TICK_MILLIS,
+				TimeUnit.MILLISECONDS);
+		long deadline = System.currentTimeMillis() + config.getLoadDuration();
+		while (established.get() + failed.get() < clients.size() && System.currentTimeMillis() < deadline) {
+			Thread.sleep(TICK_MILLIS);
+		}
+		long heapPerClient = (settledHeap() - heapBefore) / Math.max(1, clients.size());
+		LOG.info("Fleet up after {} ms: {} established, {} failed, {} bytes of heap and {} threads for {} clients",
+				TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start), established.get(), failed.get(),
+				heapPerClient, ManagementFactory.getThreadMXBean().getThreadCount(), clients.size());
+		long remaining = deadline - System.currentTimeMillis();
+		if (remaining > 0) {
+			Thread.sleep(remaining);
+		}
+		ticker.cancel(false);
+		for (FleetClient client : clients) {
+			client.stop();
+		}
+		// let the echoes in flight arrive
+		Thread.sleep(Math.min(config.getLoadHandshakeTimeout(), config.getFleetMessageInterval()));
+		double elapsedSeconds = (System.nanoTime() - start) / 1e9;
+
+		for (FleetClient client : clients) {
+			client.connector.destroy();
+		}
+		for (FleetReceiver receiver : receivers) {
+			receiver.close();
+		}
+		executor.shutdownNow();
+		LOG.info("Handshakes: {} succeeded, {} failed", established.get(), failed.get());
+		LOG.info("Handshake latency: {}", handshakeLatencies.summary());
+		LOG.info("Records: {} sent, {} echoed ({}/s), {} dropped by full socket buffers", sent.get(), echoed.get(),
+				String.format(Locale.ROOT, "%.1f", echoed.get() / elapsedSeconds), dropped.get());
+		LOG.info("Echo latency: {}", echoLatencies.summary());
+		long budget = config.getFleetClientBudget();
+		if (budget > 0 && heapPerClient > budget) {
+			LOG.warn("Heap per client: {} bytes, over the budget of {} bytes", heapPerClient, budget);
+		} else {
+			LOG.info("Heap per client: {} bytes{}", heapPerClient, budget > 0 ? ", budget " + budget + " bytes" : "");
+		}
+	}
+
+	private DtlsConnectorConfig connectorConfig(String pskIdentity) throws GeneralSecurityException, IOException {
+		DtlsConnectorConfig connectorConfig = connectorConfigs.get(pskIdentity);
+		if (connectorConfig == null) {
+			DtlsConnectorConfig.Builder builder = ExampleDTLSClient.createConfigBuilder(config, pskIdentity);
+			// the sockets are read by the fleet's receivers
+			builder.setReceiverThreadCount(0);
+			// a client only connects to the one server
+			builder.setMaxConnections(1);
+			connectorConfig = builder.build();
+			connectorConfigs.put(pskIdentity, connectorConfig);
+		}
+		return connectorConfig;
+	}
+
+	/**
+	 * @return the bytes of heap used, once the garbage is collected
+	 */
+	private static long settledHeap() throws InterruptedException {
+		Runtime runtime = Runtime.getRuntime();
+		for (int i = 0; i < SETTLE_COLLECTIONS; i++) {
+			System.gc();
+			Thread.sleep(100);
+		}
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+
+	/**
+	 * Starts the handshakes of the clients at the target rate.
+	 */
+	private class Ticker implements Runnable {
+		private final long start;
+		private int issued;
+
+		private Ticker(long start) {
+			this.start = start;
+		}
+
+		@Override
+		public void run() {
+			long due = clients.size();
+			if (config.getLoadRate() > 0) {
+				due = Math.min(due, (long) (config.getLoadRate() * (System.nanoTime() - start) / 1e9));
+			}
+			for (; issued < due; issued++) {
+				clients.get(issued).handshake();
+			}
+		}
+	}
+
+	/**
+	 * A device, which handshakes once and then reports at the message
+	 * interval.
+	 */
+	private class FleetClient implements MessageCallback {
+		private final FleetConnector connector;
+		private final AtomicBoolean done = new AtomicBoolean();
+		private volatile long start;
+		private volatile ScheduledFuture<?> next;
+
+		private FleetClient(FleetConnector connector) {
+			this.connector = connector;
+		}
+
+		private void handshake() {
+			start = System.nanoTime();
+			next = executor.schedule(() -> complete(false), config.getLoadHandshakeTimeout(), TimeUnit.MILLISECONDS);
+			connector.send(RawData.outbound(new byte[0], peerContext, this, false));
+		}
+
+		private void complete(boolean success) {
+			if (!done.compareAndSet(false, true)) {
+				return;
+			}
+			next.cancel(false);
+			if (!success) {
+				failed.incrementAndGet();
+				return;
+			}
+			handshakeLatencies.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+			established.incrementAndGet();
+			long interval = config.getFleetMessageInterval();
+			if (interval > 0) {
+				// spread over the interval, so that the clients established together do not report together
+				long delay = (long) (Math.random() * interval);
+				next = executor.scheduleAtFixedRate(this::report, delay, interval, TimeUnit.MILLISECONDS);
+			}
+		}
+
+		private void report() {
+			byte[] payload = ByteBuffer.allocate(Long.BYTES).putLong(System.nanoTime()).array();
+			sent.incrementAndGet();
+			connector.send(RawData.outbound(payload, peerContext, null, false));
+		}
+
+		private void receive(RawData echo) {
+			if (echo.getSize() == Long.BYTES) {
+				echoLatencies.record(System.nanoTime() - ByteBuffer.wrap(echo.getBytes()).getLong(),
+						TimeUnit.NANOSECONDS);
+				echoed.incrementAndGet();
+			}
+		}
+
+		private void stop() {
+			ScheduledFuture<?> pending = next;
+			if (pending != null) {
+				pending.cancel(false);
+			}
+		}
+
+		@Override
+		public void onConnecting() {
+		}
+
+		@Override
+		public void onDtlsRetransmission(int flight) {
+		}
+
+		@Override
+		public void onContextEstablished(EndpointContext context) {
+			complete(true);
+		}
+
+		@Override
+		public void onSent() {
+		}
+
+		@Override
+		public void onError(Throwable error) {
+			LOG.debug("Handshake failed", error);
+			complete(false);
+		}
+	}
+
+	/**
+	 * A connector without receiver threads, whose socket is read by one of the
+	 * fleet's receivers.
+	 */
+	private class FleetConnector extends MeteredDTLSConnector {
+		private final FleetReceiver receiver;
+		private DatagramChannel channel;
+
+		private FleetConnector(DtlsConnectorConfig configuration, FleetReceiver receiver) {
+			super(configuration);
+			this.receiver = receiver;
+		}
+
+		@Override
+		protected void init(InetSocketAddress bindAddress, DatagramSocket socket, Integer mtu) throws IOException {
+			// replaced by a channel's socket, which a selector can read
+			socket.close();
+			channel = DatagramChannel.open();
+			super.init(bindAddress, channel.socket(), mtu);
+			channel.configureBlocking(false);
+			receiver.register(this);
+		}
+
+		@Override
+		protected void sendDatagram(DatagramPacket datagram) throws IOException {
+			ByteBuffer data = ByteBuffer.wrap(datagram.getData(), datagram.getOffset(), datagram.getLength());
+			if (channel.send(data, datagram.getSocketAddress()) == 0) {
+				// as a blocking socket would drop it, too, just not here
+				dropped.incrementAndGet();
+			}
+		}
+	}
+
+	/**
+	 * Reads the datagrams of many connectors' sockets and hands them to the
+	 * connectors, which process their records on the connection threads.
+	 */
+	private class FleetReceiver extends Thread {
+		private final Selector selector;
+		private final Queue<FleetConnector> registrations = new ConcurrentLinkedQueue<>();
+		private final ByteBuffer buffer = ByteBuffer.allocate(MAX_DATAGRAM_SIZE);
+
+		private FleetReceiver(int index) throws IOException {
+			super("FleetReceiver-" + index);
+			setDaemon(true);
+			selector = Selector.open();
+		}
+
+		private void register(FleetConnector connector) {
+			registrations.add(connector);
+			selector.wakeup();
+		}
+
+		@Override
+		public void run() {
+			try {
+				while (selector.isOpen()) {
+					selector.select();
+					FleetConnector registered;
+					while ((registered = registrations.poll()) != null) {
+						try {
+							registered.channel.register(selector, SelectionKey.OP_READ, registered);
+						} catch (ClosedChannelException e) {
+							LOG.trace("Connector destroyed before it was registered", e);
+						}
+					}
+					Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+					while (keys.hasNext()) {
+						SelectionKey key = keys.next();
+						keys.remove();
+						if (key.isValid() && key.isReadable()) {
+							read((FleetConnector) key.attachment());
+						}
+					}
+				}
+			} catch (ClosedSelectorException e) {
+				// closed at the end of the run
+			} catch (IOException e) {
+				LOG.error("Fleet receiver failed", e);
+			}
+		}
+
+		private void read(FleetConnector connector) {
+			try {
+				SocketAddress source;
+				while ((source = connector.channel.receive(buffer)) != null) {
+					buffer.flip();
+					byte[] data = new byte[buffer.remaining()];
+					buffer.get(data);
+					buffer.clear();
+					connector.processDatagram(new DatagramPacket(data, data.length, source));
+				}
+			} catch (IOException e) {
+				// the connector was destroyed
+				LOG.trace("Could not read from {}", connector.channel, e);
+			}
+		}
+
+		private void close() throws IOException {
+			selector.close();
+		}
+	}
+}
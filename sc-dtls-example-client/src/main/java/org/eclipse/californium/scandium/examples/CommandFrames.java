@@ -0,0 +1,176 @@
+package org.eclipse.californium.scandium.examples;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * The framed variant of the thread starter's command protocol, which lets
+ * learners pipeline commands and match the replies to them.
+ *
+ * Each frame, in either direction, consists of a 4 byte request id, a 2 byte
+ * body length and the body, all in network byte order. A request body holds a
+ * command (e.g. "reset"), a reply body the reply to the request with the same
+ * id. Commands are executed in the order they arrive, and every command other
+ * than "exit" gets at least one reply frame, with an empty body if the command
+ * has nothing to report. Replies therefore come back in request order.
+ *
+ * Events pushed to a learner which subscribed to them come in frames with the
+ * id {@link #EVENT_ID}, which learners must not use for their requests. A
+ * request with that id is not executed, but answered with the frame of
+ * {@link #reservedId()}. A learner turned away for lack of a free session gets
+ * a single frame with that id, too, whose body is {@link #BUSY}.
+ */
+public final class CommandFrames {
+	public static final int HEADER_LENGTH = 6;
+	public static final int MAX_BODY_LENGTH = 0xffff;
+	public static final int EVENT_ID = -1;
+	public static final String BUSY = "busy";
+
+	/**
+	 * A decoded request.
+	 */
+	public static final class Frame {
+		private final int id;
+		private final String command;
+
+		public Frame(int id, String command) {
+			this.id = id;
+			this.command = command;
+		}
+
+		public int getId() {
+			return id;
+		}
+
+		public String getCommand() {
+			return command;
+		}
+	}
+
+	/**
+	 * Takes encoded reply frames.
+	 */
+	public interface Sink {
+		void write(byte[] frame) throws IOException;
+	}
+
+	/**
+	 * Wraps the replies to one request into frames carrying its id.
+	 */
+	public static final class Replier implements CommandSelector.Replier {
+		private final int id;
+		private final Sink sink;
+		private boolean replied;
+
+		public Replier(int id, Sink sink) {
+			this.id = id;
+			this.sink = sink;
+		}
+
+		@Override
+		public void reply(String line) throws IOException {
+			replied = true;
+			sink.write(encode(id, line));
+		}
+
+		/**
+		 * Sends an empty reply, if the command did not reply by itself.
+		 */
+		public void complete() throws IOException {
+			if (!replied) {
+				reply("");
+			}
+		}
+	}
+
+	private CommandFrames() {
+	}
+
+	public static byte[] encode(int id, String body) {
+		byte[] bytes = body.getBytes(StandardCharsets.US_ASCII);
+		if (bytes.length > MAX_BODY_LENGTH) {
+			throw new IllegalArgumentException("Frame body too long: " + bytes.length);
+		}
+		ByteBuffer frame = ByteBuffer.allocate(HEADER_LENGTH + bytes.length);
+		frame.putInt(id);
+		frame.putShort((short) bytes.length);
+		frame.put(bytes);
+		return frame.array();
+	}
+
+	/**
+	 * @return what a learner turned away for lack of a free session is sent,
+	 *         a line or, in the framed protocol, a frame
+	 */
+	public static byte[] busy(boolean framed) {
+		if (framed) {
+			return encode(EVENT_ID, BUSY);
+		}
+		return (BUSY + "\n").getBytes(StandardCharsets.US_ASCII);
+	}
+
+	/**
+	 * @return the error frame a request with the reserved {@link #EVENT_ID} is
+	 *         answered with, its body can't be taken for an event
+	 */
+	public static byte[] reservedId() {
+		return encode(EVENT_ID, "error request id " + EVENT_ID + " is reserved for events");
+	}
+
+	/**
+	 * Reads the next request from a blocking stream.
+	 *
+	 * @return the request, or {@code null} if the stream ended
+	 */
+	public static Frame read(DataInputStream in) throws IOException {
+		int id;
+		try {
+			id = in.readInt();
+		} catch (EOFException e) {
+			return null;
+		}
+		byte[] body = new byte[in.readUnsignedShort()];
+		in.readFully(body);
+		return new Frame(id, new String(body, StandardCharsets.US_ASCII));
+	}
+
+	/**
+	 * Decodes the next request from a buffer in read mode, leaving the buffer
+	 * untouched if it does not yet hold the complete frame.
+	 *
+	 * @return the request, or {@code null} if the frame is incomplete
+	 * @throws IOException if the frame could never fit into the buffer
+	 */
+	public static Frame decode(ByteBuffer buffer) throws IOException {
+		if (buffer.remaining() < HEADER_LENGTH) {
+			return null;
+		}
+		int start = buffer.position();
+		int length = buffer.getShort(start + 4) & 0xffff;
+		if (HEADER_LENGTH + length > buffer.capacity()) {
+			throw new IOException("Frame of " + length + " bytes exceeds the command buffer");
+		}
+		if (buffer.remaining() < HEADER_LENGTH + length) {
+			return null;
+		}
+		int id = buffer.getInt();
+		buffer.getShort();
+		byte[] body = new byte[length];
+		buffer.get(body);
+		return new Frame(id, new String(body, StandardCharsets.US_ASCII));
+	}
+
+	public static Sink sink(OutputStream out) {
+		// events are written by the connectors' threads, concurrently to the replies
+		return frame -> {
+			synchronized (out) {
+				out.write(frame);
+				out.flush();
+			}
+		};
+	}
+}
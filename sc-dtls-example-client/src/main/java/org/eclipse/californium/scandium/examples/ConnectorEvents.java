@@ -0,0 +1,98 @@
+package org.eclipse.californium.scandium.examples;
+
+import java.net.InetSocketAddress;
+
+import org.eclipse.californium.elements.EndpointContext;
+import org.eclipse.californium.elements.MessageCallback;
+
+/**
+ * The events a server or client reports as they happen, so that a learner
+ * need not wait out a timeout to tell that the peer under test produced its
+ * output. An event is its name followed by space separated details, as in
+ * {@code alert-sent 127.0.0.1:5684 FATAL HANDSHAKE_FAILURE}.
+ */
+public final class ConnectorEvents {
+	/** A handshake completed. Details: peer */
+	public static final String ESTABLISHED = "established";
+	/** A handshake failed. Details: peer, cause */
+	public static final String FAILED = "failed";
+	/** An alert was sent. Details: peer, level, description */
+	public static final String ALERT_SENT = "alert-sent";
+	/** An alert was received. Details: peer, level, description */
+	public static final String ALERT_RECEIVED = "alert-received";
+	/** An application record was echoed. Details: peer, length */
+	public static final String ECHOED = "echoed";
+	/** The connector was destroyed. */
+	public static final String CLOSED = "closed";
+
+	/**
+	 * Takes the events, called by the connector's threads.
+	 */
+	public interface Listener {
+		void onEvent(String event);
+	}
+
+	private ConnectorEvents() {
+	}
+
+	public static String format(String name, Object... details) {
+		StringBuilder event = new StringBuilder(name);
+		for (Object detail : details) {
+			event.append(' ');
+			if (detail instanceof InetSocketAddress) {
+				InetSocketAddress address = (InetSocketAddress) detail;
+				event.append(address.getAddress().getHostAddress()).append(':').append(address.getPort());
+			} else {
+				// keeps an event on a single line
+				event.append(String.valueOf(detail).replace('\n', ' ').replace('\r', ' '));
+			}
+		}
+		return event.toString();
+	}
+
+	/**
+	 * @return a callback reporting an echo of the given length as
+	 *         {@link #ECHOED} once it is sent, and otherwise handing on to the
+	 *         given callback, if there is one
+	 */
+	public static MessageCallback echoCallback(Listener listener, InetSocketAddress peer, int length,
+			MessageCallback next) {
+		return new MessageCallback() {
+			@Override
+			public void onSent() {
+				listener.onEvent(format(ECHOED, peer, length));
+				if (next != null) {
+					next.onSent();
+				}
+			}
+
+			@Override
+			public void onError(Throwable error) {
+				if (next != null) {
+					next.onError(error);
+				}
+			}
+
+			@Override
+			public void onDtlsRetransmission(int flight) {
+				if (next != null) {
+					next.onDtlsRetransmission(flight);
+				}
+			}
+
+			@Override
+			public void onContextEstablished(EndpointContext context) {
+				if (next != null) {
+					next.onContextEstablished(context);
+				}
+			}
+
+			@Override
+			public void onConnecting() {
+				if (next != null) {
+					next.onConnecting();
+				}
+			}
+		};
+	}
+}
@@ -0,0 +1,220 @@
+package org.eclipse.californium.scandium.examples;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.InetAddress;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Records every datagram sent or received by the connectors of the process
+ * into trace files, cheaply enough to be left on during load tests.
+ *
+ * Connectors only encode a datagram and put it into a bounded lock-free ring.
+ * A single thread drains the ring into a memory-mapped file. Once a file is
+ * full, it is truncated to its content and the next one is started, keeping
+ * only the most recent files. Datagrams arriving while the ring is full are
+ * dropped and counted as {@code trace.dropped} instead of slowing the
+ * connectors down.
+ *
+ * Trace files are named {@code <base>.<index>.dtr}. All numbers are in
+ * network byte order.
+ * <ul>
+ * <li>header: magic "DTR1", start of the recording in milliseconds since the
+ * epoch, index of the file</li>
+ * <li>records: 2 byte length of the record, 8 byte nanoseconds since the start
+ * of the recording, 1 byte direction ({@link #INBOUND} or {@link #OUTBOUND}),
+ * 2 byte local port, 1 byte length of the peer's IP address, the address,
+ * 2 byte peer port, datagram</li>
+ * </ul>
+ * A record length of 0 ends a file, which is where a crashed process left it.
+ */
+public class DatagramRecorder implements AutoCloseable {
+	private static final Logger LOG = LoggerFactory.getLogger(DatagramRecorder.class);
+	public static final int MAGIC = 0x44545231;
+	public static final int HEADER_LENGTH = 16;
+	public static final byte INBOUND = 0;
+	public static final byte OUTBOUND = 1;
+	public static final String DROPPED = "trace.dropped";
+	private static final int FIXED_RECORD_LENGTH = 2 + 8 + 1 + 2 + 1 + 2;
+	private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+
+	private static volatile DatagramRecorder active;
+
+	private final String base;
+	private final int fileSize;
+	private final int maxFiles;
+	private final long startMillis = System.currentTimeMillis();
+	private final long startNanos = System.nanoTime();
+	private final AtomicReferenceArray<byte[]> ring;
+	private final int mask;
+	// the next slot to claim by a connector, respectively to drain
+	private final AtomicLong head = new AtomicLong();
+	private final AtomicLong tail = new AtomicLong();
+	private final LongAdder dropped = Metrics.registry().counter(DROPPED);
+	private final Deque<Path> files = new ArrayDeque<>();
+	private final Thread drainer;
+	private volatile boolean closed;
+	private FileChannel channel;
+	private MappedByteBuffer mapped;
+	private int fileIndex;
+
+	/**
+	 * @param base the path of the trace files, without index and extension
+	 * @param fileSize the size in bytes up to which a file grows
+	 * @param maxFiles the number of most recent files kept
+	 * @param ringSize the number of datagrams buffered until they are written,
+	 *            rounded up to a power of two
+	 */
+	public DatagramRecorder(String base, int fileSize, int maxFiles, int ringSize) throws IOException {
+		this.base = base;
+		this.fileSize = fileSize;
+		this.maxFiles = Math.max(1, maxFiles);
+		int slots = Integer.highestOneBit(Math.max(2, ringSize) - 1) << 1;
+		this.ring = new AtomicReferenceArray<>(slots);
+		this.mask = slots - 1;
+		nextFile();
+		drainer = new Thread(this::drain, "DatagramRecorder");
+		drainer.setDaemon(true);
+		drainer.start();
+	}
+
+	/**
+	 * Starts recording the datagrams of all connectors created from now on.
+	 * The recording is completed when the process exits.
+	 */
+	public static synchronized DatagramRecorder start(String base, int fileSize, int maxFiles, int ringSize)
+			throws IOException {
+		if (active == null) {
+			DatagramRecorder recorder = new DatagramRecorder(base, fileSize, maxFiles, ringSize);
+			Runtime.getRuntime().addShutdownHook(new Thread(recorder::close, "DatagramRecorder-Close"));
+			active = recorder;
+			LOG.info("Recording datagrams to {}.*.dtr", base);
+		}
+		return active;
+	}
+
+	/**
+	 * @return the recorder started for the process, or {@code null} if
+	 *         datagrams are not recorded
+	 */
+	public static DatagramRecorder active() {
+		return active;
+	}
+
+	/**
+	 * Records the datagram, unless the ring is full or the recorder closed.
+	 * Called concurrently by the connectors' threads.
+	 */
+	public void record(byte direction, int localPort, DatagramPacket packet) {
+		long nanos = System.nanoTime() - startNanos;
+		InetAddress peer = packet.getAddress();
+		byte[] address = peer.getAddress();
+		int length = FIXED_RECORD_LENGTH + address.length + packet.getLength();
+		if (closed || length > 0xffff) {
+			dropped.increment();
+			return;
+		}
+		long slot;
+		do {
+			slot = head.get();
+			if (slot - tail.get() > mask) {
+				dropped.increment();
+				return;
+			}
+		} while (!head.compareAndSet(slot, slot + 1));
+		ByteBuffer record = ByteBuffer.allocate(length);
+		record.putShort((short) length).putLong(nanos).put(direction).putShort((short) localPort);
+		record.put((byte) address.length).put(address).putShort((short) packet.getPort());
+		record.put(packet.getData(), packet.getOffset(), packet.getLength());
+		// the slot is claimed, so the drainer waits for it to be filled
+		ring.lazySet((int) (slot & mask), record.array());
+	}
+
+	private void drain() {
+		long next = tail.get();
+		while (true) {
+			int index = (int) (next & mask);
+			byte[] record = ring.get(index);
+			if (record == null) {
+				if (closed && next == head.get()) {
+					break;
+				}
+				LockSupport.parkNanos(IDLE_PARK_NANOS);
+				continue;
+			}
+			ring.lazySet(index, null);
+			tail.lazySet(++next);
+			try {
+				write(record);
+			} catch (IOException e) {
+				LOG.error("Could not write trace file, recording stopped", e);
+				closed = true;
+				break;
+			}
+		}
+		try {
+			finishFile();
+		} catch (IOException e) {
+			LOG.error("Could not complete trace file", e);
+		}
+	}
+
+	private void write(byte[] record) throws IOException {
+		if (mapped.remaining() < record.length) {
+			finishFile();
+			nextFile();
+		}
+		mapped.put(record);
+	}
+
+	private void nextFile() throws IOException {
+		Path file = Paths.get(base + "." + fileIndex + ".dtr");
+		channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+				StandardOpenOption.READ, StandardOpenOption.WRITE);
+		// at least large enough for a record of the maximum length
+		mapped = channel.map(FileChannel.MapMode.READ_WRITE, 0, Math.max(fileSize, HEADER_LENGTH + 0x10000));
+		mapped.putInt(MAGIC).putLong(startMillis).putInt(fileIndex);
+		files.addLast(file);
+		while (files.size() > maxFiles) {
+			Files.deleteIfExists(files.removeFirst());
+		}
+		fileIndex++;
+	}
+
+	private void finishFile() throws IOException {
+		if (channel != null && channel.isOpen()) {
+			int length = mapped.position();
+			channel.truncate(length);
+			channel.close();
+		}
+	}
+
+	/**
+	 * Stops recording, once all recorded datagrams are written.
+	 */
+	@Override
+	public void close() {
+		closed = true;
+		try {
+			drainer.join(TimeUnit.SECONDS.toMillis(5));
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+}
@@ -22,21 +22,22 @@
 package org.eclipse.californium.scandium.examples;
 
 import java.io.IOException;
-import java.io.InputStream;
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.net.SocketException;
 import java.security.GeneralSecurityException;
-import java.security.KeyStore;
-import java.security.PrivateKey;
 import java.security.cert.Certificate;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.LongAdder;
 
 import org.eclipse.californium.elements.AddressEndpointContext;
 import org.eclipse.californium.elements.EndpointContext;
 import org.eclipse.californium.elements.MessageCallback;
 import org.eclipse.californium.elements.RawData;
 import org.eclipse.californium.elements.RawDataChannel;
-import org.eclipse.californium.scandium.DTLSConnector;
 import org.eclipse.californium.scandium.config.DtlsConnectorConfig;
 import org.eclipse.californium.scandium.dtls.CertificateType;
 import org.eclipse.californium.scandium.dtls.cipher.CipherSuite.CertificateKeyAlgorithm;
@@ -53,65 +54,45 @@ public class ExampleDTLSClient implements Runnable {
 	private static final String MESSAGE = "HELLO";
 	private static final Logger LOG = LoggerFactory.getLogger(ExampleDTLSClient.class);
 
-	private static Integer port = DEFAULT_PORT;
-
-	private DTLSConnector dtlsConnector;
+	private MeteredDTLSConnector dtlsConnector;
 	private Operation operation;
+	// the executor created for this client, if any
+	private ExecutorService ownExecutor;
+	// the executor the connector runs on, counting this client's tasks, null for its own pool
+	private ExecutorService executor;
+	private int port = DEFAULT_PORT;
+	// completed once the connector is bound, respectively destroyed
+	private final CompletableFuture<InetSocketAddress> started = new CompletableFuture<>();
+	private final CompletableFuture<Void> stopped = new CompletableFuture<>();
+	private final LongAdder echoed = Metrics.registry().counter(Metrics.RECORDS_ECHOED);
+	private volatile ConnectorEvents.Listener eventListener;
 
 	public ExampleDTLSClient(ExampleDTLSClientConfig config) {
+		this(config, null, null);
+	}
+
+	/**
+	 * Creates a client connecting to the given port instead of the configured
+	 * one, unless {@code null} is given. Its connector runs on the given
+	 * executor, which is left to the caller to shut down. If {@code null} is
+	 * given, the executor configured by {@code -executor} is used.
+	 */
+	public ExampleDTLSClient(ExampleDTLSClientConfig config, Integer peerPort, ExecutorService executor) {
 		operation = config.getOperation();
+		port = peerPort != null ? peerPort : config.getPort();
 		try {
-			DtlsConnectorConfig.Builder builder = new DtlsConnectorConfig.Builder();
-
-			// Allows us to use cipher suites such as TLS_PSK_WITH_AES_128_CBC_SHA256
-			// Only necessary in later (post 2.0.0) versions of Scandium.
-			builder.setRecommendedCipherSuitesOnly(false);
-			builder.setSupportedCipherSuites(config.getCipherSuites());
-
-			if (config.getCipherSuites().stream().anyMatch(cs -> cs.isPskBased())) {
-				PskStore pskStore = new StaticPskStore(config.getPskIdentity(), config.getPskKey());
-				builder.setPskStore(pskStore);
-			}
-			if (config.getCipherSuites().stream()
-					.anyMatch(cs -> !cs.getCertificateKeyAlgorithm().equals(CertificateKeyAlgorithm.NONE))) {
-				// load the trust store
-				KeyStore trustStore = KeyStore.getInstance("JKS");
-				InputStream inTrust = config.getTrustInputStream();
-				trustStore.load(inTrust, config.getTrustPassword().toCharArray());
-
-				// load the key store
-				KeyStore keyStore = KeyStore.getInstance("JKS");
-				InputStream inKey = config.getKeyInputStream();
-				keyStore.load(inKey, config.getKeyPassword().toCharArray());
-
-				builder.setIdentity(
-						(PrivateKey) keyStore.getKey(config.getKeyAlias(), config.getKeyPassword().toCharArray()),
-						keyStore.getCertificateChain(config.getKeyAlias()), CertificateType.X_509);
-
-				// You can load multiple certificates if needed
-				Certificate[] trustedCertificates = new Certificate[1];
-				trustedCertificates[0] = trustStore.getCertificate(config.getTrustAlias());
-				builder.setTrustStore(trustedCertificates);
+			DtlsConnectorConfig.Builder builder = createConfigBuilder(config);
+			dtlsConnector = new MeteredDTLSConnector(builder.build());
+			// learners may ask a thread starter whether the client is quiescent
+			dtlsConnector.setMessageTracking(config.getStarterAddress() != null);
+			if (executor == null) {
+				executor = ownExecutor = ThreadModel.createExecutor(config.getExecutor(), config.getConnectionThreads());
 			}
-
-			builder.setRetransmissionTimeout(config.getTimeout());
-
-			builder.setConnectionThreadCount(1);
-			builder.setReceiverThreadCount(1);
-
-			switch (config.getClientAuth()) {
-			case NEEDED:
-				builder.setClientAuthenticationRequired(true);
-				break;
-			case WANTED:
-				builder.setClientAuthenticationRequired(false);
-				builder.setClientAuthenticationWanted(true);
-				break;
-			case DISABLED:
-				builder.setClientAuthenticationRequired(false);
-				builder.setClientAuthenticationWanted(false);
+			// the executor may be shared with other clients, whose tasks don't keep this one busy
+			executor = this.executor = ThreadModel.track(executor);
+			if (executor != null) {
+				dtlsConnector.setExecutor(executor);
 			}
-			dtlsConnector = new DTLSConnector(builder.build());
 			dtlsConnector.setRawDataReceiver(new RawDataChannel() {
 
 				@Override
@@ -127,6 +108,72 @@ public class ExampleDTLSClient implements Runnable {
 		}
 	}
 
+	/**
+	 * Creates a connector configuration builder set up according to the given
+	 * client configuration.
+	 */
+	static DtlsConnectorConfig.Builder createConfigBuilder(ExampleDTLSClientConfig config)
+			throws GeneralSecurityException, IOException {
+		return createConfigBuilder(config, config.getPskIdentity());
+	}
+
+	/**
+	 * Creates a connector configuration builder for the given PSK identity,
+	 * whose key is looked up in the PSK file if one is configured.
+	 */
+	static DtlsConnectorConfig.Builder createConfigBuilder(ExampleDTLSClientConfig config, String pskIdentity)
+			throws GeneralSecurityException, IOException {
+		DtlsConnectorConfig.Builder builder = new DtlsConnectorConfig.Builder();
+
+		// Allows us to use cipher suites such as TLS_PSK_WITH_AES_128_CBC_SHA256
+		// Only necessary in later (post 2.0.0) versions of Scandium.
+		builder.setRecommendedCipherSuitesOnly(false);
+		builder.setSupportedCipherSuites(config.getCipherSuites());
+
+		if (config.getCipherSuites().stream().anyMatch(cs -> cs.isPskBased())) {
+			byte[] pskKey = config.getPskKey();
+			if (config.getPskFile() != null) {
+				pskKey = FilePskStore.shared(config.getPskFile(), config.isPskFileMapped()).getKeyBytes(pskIdentity);
+				if (pskKey == null) {
+					throw new IOException("No key for " + pskIdentity + " in " + config.getPskFile());
+				}
+			}
+			PskStore pskStore = new StaticPskStore(pskIdentity, pskKey);
+			builder.setPskStore(pskStore);
+		}
+		if (config.getCipherSuites().stream()
+				.anyMatch(cs -> !cs.getCertificateKeyAlgorithm().equals(CertificateKeyAlgorithm.NONE))) {
+			// parsed key material is shared by all instances within the JVM
+			CredentialsCache.Identity identity = CredentialsCache.getIdentity(config.getKeyLocation(),
+					config::getKeyInputStream, config.getKeyAlias(), config.getKeyPassword(),
+					config.isReloadCredentials());
+			builder.setIdentity(identity.getPrivateKey(), identity.getCertificateChain(), CertificateType.X_509);
+
+			Certificate[] trustedCertificates = CredentialsCache.getTrustedCertificates(config.getTrustLocation(),
+					config::getTrustInputStream, config.getTrustAlias(), config.getTrustPassword(),
+					config.isReloadCredentials());
+			builder.setTrustStore(trustedCertificates);
+		}
+
+		builder.setRetransmissionTimeout(config.getTimeout());
+
+		ThreadModel.configure(builder, config.getReceiverThreads(), config.getConnectionThreads());
+
+		switch (config.getClientAuth()) {
+		case NEEDED:
+			builder.setClientAuthenticationRequired(true);
+			break;
+		case WANTED:
+			builder.setClientAuthenticationRequired(false);
+			builder.setClientAuthenticationWanted(true);
+			break;
+		case DISABLED:
+			builder.setClientAuthenticationRequired(false);
+			builder.setClientAuthenticationWanted(false);
+		}
+		return builder;
+	}
+
 	private void receive(RawData raw) {
 		MessageCallback callback = null;
 		if (operation == Operation.ONE_ECHO) {
@@ -155,9 +202,15 @@ public class ExampleDTLSClient implements Runnable {
 			};
 		}
 
+		ConnectorEvents.Listener listener = eventListener;
+		if (listener != null && (operation == Operation.FULL || operation == Operation.ONE_ECHO)) {
+			callback = ConnectorEvents.echoCallback(listener, raw.getInetSocketAddress(), raw.getSize(), callback);
+		}
 		RawData data = RawData.outbound(raw.getBytes(), raw.getEndpointContext(), callback, false);
 		LOG.info("Received message: ", new String(raw.getBytes()));
 		if (operation == Operation.FULL || operation == Operation.ONE_ECHO) {
+			// only counted if echoed, ONE_MESSAGE and BASIC just receive
+			echoed.increment();
 			dtlsConnector.send(data);
 		}
 		if (operation == Operation.ONE_MESSAGE) {
@@ -168,8 +221,10 @@ public class ExampleDTLSClient implements Runnable {
 	private void startClient() {
 		try {
 			dtlsConnector.start();
+			started.complete(dtlsConnector.getAddress());
 			startTest(new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
 		} catch (IOException e) {
+			started.completeExceptionally(e);
 			LOG.error("Cannot start connector", e);
 		}
 	}
@@ -178,6 +233,14 @@ public class ExampleDTLSClient implements Runnable {
 		if (dtlsConnector.isRunning()) {
 			dtlsConnector.destroy();
 		}
+		if (ownExecutor != null) {
+			ownExecutor.shutdownNow();
+		}
+		ConnectorEvents.Listener listener = eventListener;
+		if (listener != null && stopped.complete(null)) {
+			listener.onEvent(ConnectorEvents.CLOSED);
+		}
+		stopped.complete(null);
 		LOG.info("Client stopped");
 	}
 
@@ -191,16 +254,60 @@ public class ExampleDTLSClient implements Runnable {
 	}
 
 	public void run() {
-		startClient();
 		try {
-			for (;;) {
-				Thread.sleep(10);
-			}
+			startClient();
+			// runs until the client stops by itself or the thread is interrupted
+			stopped.get();
 		} catch (InterruptedException e) {
 			stopClient();
+		} catch (ExecutionException e) {
+			// stopped is never completed exceptionally
+		} finally {
+			// release anyone waiting on a client which failed before it was started
+			started.completeExceptionally(new IllegalStateException("Client was not started"));
+			stopped.complete(null);
 		}
 	}
 
+	/**
+	 * @return a future completed with the bound address once the client has started
+	 */
+	public Future<InetSocketAddress> getStartFuture() {
+		return started;
+	}
+
+	/**
+	 * @return a future completed once the client's connector has been destroyed
+	 */
+	public Future<Void> getStopFuture() {
+		return stopped;
+	}
+
+	/**
+	 * Sets the listener the handshakes, alerts, echoes and the end of this
+	 * client are reported to, or {@code null} to stop reporting them.
+	 */
+	public void setEventListener(ConnectorEvents.Listener listener) {
+		eventListener = listener;
+		dtlsConnector.setEventListener(listener);
+	}
+
+	/**
+	 * @return {@code true} if the client has nothing left to send, see
+	 *         {@link MeteredDTLSConnector#isQuiescent(long, long)}, and none
+	 *         of its tasks is pending on the executor
+	 */
+	public boolean isQuiescent(long quietNanos, long deadlineNanos) {
+		return ThreadModel.isIdle(executor) && dtlsConnector.isQuiescent(quietNanos, deadlineNanos);
+	}
+
+	/**
+	 * @return the number of datagrams the client sent
+	 */
+	public long getDatagramsSent() {
+		return dtlsConnector.getDatagramsSent();
+	}
+
 	public boolean isRunning() {
 		return dtlsConnector.isRunning();
 	}
@@ -215,7 +322,7 @@ public class ExampleDTLSClient implements Runnable {
 		try {
 			commander.parse(args);
 		} catch (ParameterException e) {
-			LOG.error("Could not parse provided parameters. ", e.getLocalizedMessage());
+			LOG.error("Could not parse provided parameters. {}", e.getLocalizedMessage());
 			commander.usage();
 			return;
 		}
@@ -225,7 +332,71 @@ public class ExampleDTLSClient implements Runnable {
 			return;
 		}
 
-		port = config.getPort();
+		if (config.getWorkers() > 0) {
+			if (config.getStarterAddress() == null) {
+				LOG.error("Workers are only supervised with a thread starter address");
+				return;
+			}
+			try {
+				// the workers record their own metrics and traces
+				new WorkerSupervisor(ExampleDTLSClient.class.getName(), args, config.getStarterAddress(), config.getWorkers(),
+						config.getWorkerCpus(), config.getWorkerMaxRss(), config.getWorkerCheckInterval(),
+						config.isStarterFramed()).run();
+			} catch (IOException | IllegalArgumentException e) {
+				LOG.error("Could not supervise the workers: {}", e.getLocalizedMessage());
+			}
+			return;
+		}
+
+		if (config.getStatsFile() != null) {
+			Metrics.registry().dumpPeriodically(config.getStatsFile(), config.getStatsInterval());
+		}
+
+		if (config.getTraceFile() != null) {
+			try {
+				DatagramRecorder.start(config.getTraceFile(),
+						Math.multiplyExact(config.getTraceFileSize(), 1024 * 1024), config.getTraceFiles(),
+						config.getTraceBuffer());
+			} catch (IOException e) {
+				LOG.error("Could not create the trace file", e);
+				return;
+			}
+		}
+
+		if (config.getOperation() == Operation.LOAD) {
+			try {
+				new HandshakeLoadGenerator(config).run();
+			} catch (GeneralSecurityException | IOException e) {
+				LOG.error("Could not run the load generator", e);
+			}
+			return;
+		}
+		if (config.getOperation() == Operation.THROUGHPUT) {
+			try {
+				new ThroughputTester(config).run();
+			} catch (GeneralSecurityException | IOException e) {
+				LOG.error("Could not run the throughput test", e);
+			}
+			return;
+		}
+
+		if (config.getOperation() == Operation.FLEET) {
+			try {
+				new ClientFleet(config).run();
+			} catch (GeneralSecurityException | IOException e) {
+				LOG.error("Could not run the fleet", e);
+			}
+			return;
+		}
+
+		if (config.getOperation() == Operation.REPLAY) {
+			try {
+				new TraceReplayer(config).run();
+			} catch (IOException e) {
+				LOG.error("Could not replay", e);
+			}
+			return;
+		}
 
 		final ExampleDTLSClient client = new ExampleDTLSClient(config);
 		if (config.getStarterAddress() == null) {
@@ -234,8 +405,12 @@ public class ExampleDTLSClient implements Runnable {
 			client.run();
 		} else {
 			try {
-				ThreadStarter ts = new ThreadStarter(() -> new ExampleDTLSClient(config), config.getStarterAddress(),
-						config.isContinuous(), config.getStartTimeout());
+				// created once, so that resets neither start nor end connection and timer threads
+				ExecutorService sharedExecutor = ThreadModel.createSharedExecutor(config.getExecutor(),
+						config.getConnectionThreads());
+				ThreadStarter ts = new ThreadStarter(peerPort -> new ExampleDTLSClient(config, peerPort, sharedExecutor),
+						config.getStarterAddress(), config.isContinuous(), config.getStartTimeout(),
+						config.getMaxSessions(), config.isStarterSelector(), config.isStarterFramed());
 				ts.run();
 			} catch (SocketException e) {
 				LOG.error(e.getLocalizedMessage());
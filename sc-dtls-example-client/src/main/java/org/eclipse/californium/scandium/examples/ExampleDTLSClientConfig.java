@@ -3,6 +3,7 @@ package org.eclipse.californium.scandium.examples;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.InputStream;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 
@@ -43,12 +44,21 @@ public class ExampleDTLSClientConfig {
 	@Parameter(names = "-keyPassword", required = false, description = "The password with which the key store is protected")
 	private String keyPassword = DEFAULT_STORE_PASSWORD;
 	
+	@Parameter(names = "-reloadCredentials", required = false, description = "Reload cached key material whenever the key or trust store file changes")
+	private boolean reloadCredentials = false;
+	
 	@Parameter(names = "-pskKey", converter=HexStringToBytesConverter.class, required = false, description = "The password (in hex form without the prefix 0x) with which the trust store is protected")
 	private byte [] pskKey = new byte [] {0x12, 0x34}; 
 	
 	@Parameter(names = "-pskIdentity", required = false, description = "The psk identity to use")
 	public String pskIdentity = "Client_identity";
 	
+	@Parameter(names = "-pskFile", required = false, description = "A file of PSK identities and keys (see FilePskStore), in which the key of -pskIdentity is looked up")
+	private String pskFile = null;
+	
+	@Parameter(names = "-pskFileMapped", required = false, description = "Memory-map the PSK file instead of reading it into the heap")
+	private boolean pskFileMapped = false;
+	
 	@Parameter(names = "-timeout", required = false, description = "The retransmission timeout for the Scandium DTLS implementation")
 	private Integer timeout = 20000;
 	
@@ -68,6 +78,99 @@ public class ExampleDTLSClientConfig {
 	@Parameter(names = "-continuous", required = false, description = "Do not stop thread starter after the learner closes the connection")
 	private boolean continuous = false;
 	
+	@Parameter(names = "-maxSessions", required = false, description = "The maximum number of learners the thread starter serves concurrently, each with its own client")
+	private Integer maxSessions = 1;
+	
+	@Parameter(names = "-starterSelector", required = false, description = "Serve all learners from a single selector thread instead of a blocking thread per learner")
+	private boolean starterSelector = false;
+	
+	@Parameter(names = "-starterFramed", required = false, description = "Use the framed thread starter protocol, which tags commands with request ids so they can be pipelined")
+	private boolean starterFramed = false;
+
+	@Parameter(names = "-workers", required = false, description = "Supervise this many worker processes, each with its own thread starter, and relay the learners connecting to the starter address to them")
+	private Integer workers = 0;
+
+	@Parameter(names = "-workerCpus", required = false, variableArity = true, description = "The CPU set of each worker in taskset notation, as in 0-3 4-7 (defaults to splitting the available processors)")
+	private List<String> workerCpus = new ArrayList<>();
+
+	@Parameter(names = "-workerMaxRss", required = false, description = "Restart a worker once its resident memory exceeds this many MB (0 to not restart workers for their memory)")
+	private Long workerMaxRss = 0L;
+
+	@Parameter(names = "-workerCheckInterval", required = false, description = "Interval in ms at which the workers are checked")
+	private Long workerCheckInterval = 1000L;
+	
+	@Parameter(names = "-loadClients", required = false, description = "The number of concurrent virtual clients in LOAD operation, respectively of clients in FLEET operation")
+	private Integer loadClients = 10;
+	
+	@Parameter(names = "-loadRate", required = false, description = "The target number of handshakes per second in LOAD and FLEET operations (0 for as fast as possible)")
+	private Double loadRate = 0.0;
+	
+	@Parameter(names = "-loadRampUp", required = false, description = "The time in ms over which the rate is ramped up to its target in LOAD operation")
+	private Integer loadRampUp = 0;
+	
+	@Parameter(names = "-loadDuration", required = false, description = "The duration in ms of the LOAD, THROUGHPUT and FLEET operations")
+	private Integer loadDuration = 10000;
+	
+	@Parameter(names = "-loadHandshakeTimeout", required = false, description = "The time in ms after which a handshake or an echo counts as failed in LOAD, THROUGHPUT and FLEET operations, or a replayed flight as unanswered in REPLAY operation")
+	private Integer loadHandshakeTimeout = 5000;
+	
+	@Parameter(names = "-resume", required = false, description = "Resume the previous session with an abbreviated handshake on reconnect instead of doing a full handshake in LOAD operation")
+	private boolean resume = false;
+	
+	@Parameter(names = "-throughputSizes", required = false, description = "The payload sizes in bytes records cycle through in THROUGHPUT operation")
+	private List<Integer> throughputSizes = Arrays.asList(64, 512, 1024, 4096);
+	
+	@Parameter(names = "-throughputWindow", required = false, description = "The number of records kept in flight in THROUGHPUT operation")
+	private Integer throughputWindow = 16;
+	
+	@Parameter(names = "-replayTrace", variableArity = true, required = false, description = "The trace files (see DatagramRecorder) replayed in REPLAY operation")
+	private List<String> replayTrace = new ArrayList<>();
+	
+	@Parameter(names = "-replayRecordedBy", required = false, description = "The side the replayed traces were recorded at")
+	private TraceReplayer.RecordedBy replayRecordedBy = TraceReplayer.RecordedBy.SERVER;
+	
+	@Parameter(names = "-replayScenario", required = false, description = "A scenario file (see TraceReplayer) replayed in REPLAY operation instead of traces")
+	private String replayScenario = null;
+	
+	@Parameter(names = "-replaySpeed", required = false, description = "The factor by which the recorded timing is compressed in REPLAY operation (0 for as fast as the responses arrive)")
+	private Double replaySpeed = 1.0;
+	
+	@Parameter(names = "-replayCopies", required = false, description = "The number of emulated peers replaying each recorded peer in REPLAY operation")
+	private Integer replayCopies = 1;
+	
+	@Parameter(names = "-fleetMessageInterval", required = false, description = "The interval in ms at which each client sends a record after its handshake in FLEET operation (0 for handshakes only)")
+	private Long fleetMessageInterval = 1000L;
+
+	@Parameter(names = "-fleetClientBudget", required = false, description = "The bytes of heap a client may take in FLEET operation, a larger share is reported (0 for no budget)")
+	private Long fleetClientBudget = 0L;
+
+	@Parameter(names = "-statsFile", required = false, description = "Periodically append the metrics to this file")
+	private String statsFile = null;
+	
+	@Parameter(names = "-statsInterval", required = false, description = "Interval in ms at which the metrics are appended to the stats file")
+	private Integer statsInterval = 10000;
+	
+	@Parameter(names = "-traceFile", required = false, description = "Record all datagrams to trace files <traceFile>.<n>.dtr (see DatagramRecorder)")
+	private String traceFile = null;
+	
+	@Parameter(names = "-traceFileSize", required = false, validateWith = TraceFileSizeValidator.class, description = "The size in MB at which a new trace file is started, at most 2047")
+	private Integer traceFileSize = 64;
+	
+	@Parameter(names = "-traceFiles", required = false, validateWith = PositiveIntegerValidator.class, description = "The number of most recent trace files kept")
+	private Integer traceFiles = 10;
+	
+	@Parameter(names = "-traceBuffer", required = false, validateWith = PositiveIntegerValidator.class, description = "The number of datagrams buffered for the trace files, further ones are dropped")
+	private Integer traceBuffer = 65536;
+	
+	@Parameter(names = "-receiverThreads", required = false, description = "The number of threads receiving datagrams (defaults to a quarter of the available processors)")
+	private Integer receiverThreads = null;
+	
+	@Parameter(names = "-connectionThreads", required = false, description = "The number of threads processing records and handshakes (defaults to the available processors)")
+	private Integer connectionThreads = null;
+	
+	@Parameter(names = "-executor", required = false, description = "The executor running the connection threads")
+	private ConnectorExecutor executor = ConnectorExecutor.INTERNAL;
+	
 	@Parameter(names = "-clientAuth", required = false, description = "Defines the authentication method.")
 	private ClientAuth clientAuth = ClientAuth.DISABLED;
 	
@@ -118,6 +221,10 @@ public class ExampleDTLSClientConfig {
 		return keyAlias;
 	}
 	
+	public boolean isReloadCredentials() {
+		return reloadCredentials;
+	}
+	
 	public Integer getTimeout() {
 		return timeout;
 	}
@@ -144,6 +251,14 @@ public class ExampleDTLSClientConfig {
 	}
 
 
+	public String getPskFile() {
+		return pskFile;
+	}
+	
+	public boolean isPskFileMapped() {
+		return pskFileMapped;
+	}
+	
 	public String getPskIdentity() {
 		return pskIdentity;
 	}
@@ -160,6 +275,130 @@ public class ExampleDTLSClientConfig {
 		return continuous;
 	}
 	
+	public Integer getMaxSessions() {
+		return maxSessions;
+	}
+	
+	public boolean isStarterSelector() {
+		return starterSelector;
+	}
+	
+	public boolean isStarterFramed() {
+		return starterFramed;
+	}
+
+	public Integer getWorkers() {
+		return workers;
+	}
+
+	public List<String> getWorkerCpus() {
+		return workerCpus;
+	}
+
+	public Long getWorkerMaxRss() {
+		return workerMaxRss;
+	}
+
+	public Long getWorkerCheckInterval() {
+		return workerCheckInterval;
+	}
+	
+	public Integer getLoadClients() {
+		return loadClients;
+	}
+	
+	public Double getLoadRate() {
+		return loadRate;
+	}
+	
+	public Integer getLoadRampUp() {
+		return loadRampUp;
+	}
+	
+	public Integer getLoadDuration() {
+		return loadDuration;
+	}
+	
+	public Integer getLoadHandshakeTimeout() {
+		return loadHandshakeTimeout;
+	}
+
+	public Long getFleetMessageInterval() {
+		return fleetMessageInterval;
+	}
+
+	public Long getFleetClientBudget() {
+		return fleetClientBudget;
+	}
+	
+	public boolean isResume() {
+		return resume;
+	}
+	
+	public List<Integer> getThroughputSizes() {
+		return throughputSizes;
+	}
+	
+	public Integer getThroughputWindow() {
+		return throughputWindow;
+	}
+	
+	public String getTraceFile() {
+		return traceFile;
+	}
+	
+	public Integer getTraceFileSize() {
+		return traceFileSize;
+	}
+	
+	public Integer getTraceFiles() {
+		return traceFiles;
+	}
+	
+	public Integer getTraceBuffer() {
+		return traceBuffer;
+	}
+	
+	public Integer getReceiverThreads() {
+		return receiverThreads;
+	}
+	
+	public Integer getConnectionThreads() {
+		return connectionThreads;
+	}
+	
+	public ConnectorExecutor getExecutor() {
+		return executor;
+	}
+	
+	public List<String> getReplayTrace() {
+		return replayTrace;
+	}
+	
+	public TraceReplayer.RecordedBy getReplayRecordedBy() {
+		return replayRecordedBy;
+	}
+	
+	public String getReplayScenario() {
+		return replayScenario;
+	}
+	
+	public Double getReplaySpeed() {
+		return replaySpeed;
+	}
+	
+	public Integer getReplayCopies() {
+		return replayCopies;
+	}
+	
+	public String getStatsFile() {
+		return statsFile;
+	}
+	
+	public Integer getStatsInterval() {
+		return statsInterval;
+	}
+	
 	public Operation getOperation() {
 		return operation;
 	}
@@ -0,0 +1,416 @@
+package org.eclipse.californium.scandium.examples;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import javax.crypto.SecretKey;
+
+import org.eclipse.californium.scandium.dtls.PskPublicInformation;
+import org.eclipse.californium.scandium.dtls.pskstore.PskStore;
+import org.eclipse.californium.scandium.util.SecretUtil;
+import org.eclipse.californium.scandium.util.ServerNames;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A PSK store holding many identities, backed by a file which is looked up in
+ * place instead of being parsed into objects. The file is either read into a
+ * single buffer or memory-mapped, in which case only the pages touched by
+ * lookups are ever loaded. It is reloaded once its modification time changes,
+ * checked at most once a second. Files are replaced atomically by
+ * {@link #write(Path, Map)}, so lookups never see a partially written one.
+ *
+ * The file is an open addressing hash table. All numbers are in network byte
+ * order.
+ * <ul>
+ * <li>header: magic "PSK1", slot count (a power of two), entry count</li>
+ * <li>slots: 32 bit hash of the identity and offset of its entry, or 0 for an
+ * empty slot</li>
+ * <li>entries: 2 byte identity length, identity, 2 byte key length, key</li>
+ * </ul>
+ *
+ * When a file is loaded only its header is checked, a file which doesn't hold
+ * such a table is rejected, and on a reload the previous identities are kept.
+ * The slots and entries are only checked when a lookup reads them, so a mapped
+ * file isn't paged in as a whole, and an entry which doesn't fit into the file
+ * is treated as absent.
+ *
+ * Run as a program to create such files, either from a text file holding an
+ * {@code identity:hexkey} pair per line or for a number of simulated devices
+ * {@code device-<n>} with random keys.
+ */
+// PskStore is deprecated in favour of the AdvancedPskStore, which 2.6.2 still
+// bridges to
+@SuppressWarnings("deprecation")
+public class FilePskStore implements PskStore {
+	private static final Logger LOG = LoggerFactory.getLogger(FilePskStore.class);
+	private static final int MAGIC = 0x50534B31;
+	private static final int HEADER_LENGTH = 12;
+	private static final int SLOT_LENGTH = 8;
+	private static final int MAX_LENGTH = 0xffff;
+	private static final long CHECK_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+	private static final Map<List<Object>, FilePskStore> SHARED = new ConcurrentHashMap<>();
+
+	private final Path file;
+	private final boolean mapped;
+	private volatile Table table;
+	private volatile long lastCheck = System.nanoTime();
+
+	public FilePskStore(Path file, boolean mapped) throws IOException {
+		this.file = file;
+		this.mapped = mapped;
+		this.table = Table.open(file, mapped);
+		LOG.info("Loaded {} PSK identities from {}", table.size(), file);
+	}
+
+	/**
+	 * @return the store of the given file shared by all connectors of the
+	 *         JVM, as it reloads by itself
+	 */
+	public static FilePskStore shared(String file, boolean mapped) throws IOException {
+		List<Object> key = Arrays.asList(Paths.get(file).toAbsolutePath(), mapped);
+		FilePskStore store = SHARED.get(key);
+		if (store == null) {
+			synchronized (SHARED) {
+				store = SHARED.get(key);
+				if (store == null) {
+					store = new FilePskStore(Paths.get(file), mapped);
+					SHARED.put(key, store);
+				}
+			}
+		}
+		return store;
+	}
+
+	@Override
+	public SecretKey getKey(PskPublicInformation identity) {
+		return current().getKey(identity.getBytes());
+	}
+
+	@Override
+	public SecretKey getKey(ServerNames serverNames, PskPublicInformation identity) {
+		// the identities are the same for all virtual hosts
+		return getKey(identity);
+	}
+
+	@Override
+	public PskPublicInformation getIdentity(InetSocketAddress inetAddress) {
+		// only meant for looking up the keys of peers
+		return null;
+	}
+
+	@Override
+	public PskPublicInformation getIdentity(InetSocketAddress peerAddress, ServerNames virtualHost) {
+		return null;
+	}
+
+	/**
+	 * @return the key of the given identity, or {@code null} if there is none
+	 */
+	public byte[] getKeyBytes(String identity) {
+		return current().getKeyBytes(identity.getBytes(StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * @return up to the given number of identities, in no particular order
+	 */
+	public List<String> getIdentities(int max) {
+		return current().identities(max);
+	}
+
+	public int size() {
+		return current().size();
+	}
+
+	private Table current() {
+		long now = System.nanoTime();
+		if (now - lastCheck > CHECK_INTERVAL_NANOS) {
+			lastCheck = now;
+			reloadIfModified();
+		}
+		return table;
+	}
+
+	private synchronized void reloadIfModified() {
+		try {
+			if (Files.getLastModifiedTime(file).toMillis() != table.lastModified) {
+				table = Table.open(file, mapped);
+				LOG.info("Reloaded {} PSK identities from {}", table.size(), file);
+			}
+		} catch (IOException e) {
+			LOG.warn("Could not reload {}, keeping the previous identities", file, e);
+		}
+	}
+
+	/**
+	 * Writes the given identities and keys to a new file, which then replaces
+	 * the given one.
+	 */
+	public static void write(Path file, Map<String, byte[]> keys) throws IOException {
+		for (Map.Entry<String, byte[]> entry : keys.entrySet()) {
+			if (entry.getKey().getBytes(StandardCharsets.UTF_8).length > MAX_LENGTH
+					|| entry.getValue().length > MAX_LENGTH) {
+				throw new IllegalArgumentException("identity or key of " + entry.getKey() + " exceeds " + MAX_LENGTH
+						+ " bytes");
+			}
+		}
+		int slots = Integer.highestOneBit(Math.max(1, keys.size() * 2 - 1)) << 1;
+		int length = HEADER_LENGTH + slots * SLOT_LENGTH;
+		for (Map.Entry<String, byte[]> entry : keys.entrySet()) {
+			length += 4 + entry.getKey().getBytes(StandardCharsets.UTF_8).length + entry.getValue().length;
+		}
+		ByteBuffer buffer = ByteBuffer.allocate(length);
+		buffer.putInt(MAGIC).putInt(slots).putInt(keys.size());
+		buffer.position(HEADER_LENGTH + slots * SLOT_LENGTH);
+		int mask = slots - 1;
+		for (Map.Entry<String, byte[]> entry : keys.entrySet()) {
+			byte[] identity = entry.getKey().getBytes(StandardCharsets.UTF_8);
+			int hash = hash(identity);
+			int slot = hash & mask;
+			while (buffer.getInt(HEADER_LENGTH + slot * SLOT_LENGTH + 4) != 0) {
+				slot = (slot + 1) & mask;
+			}
+			buffer.putInt(HEADER_LENGTH + slot * SLOT_LENGTH, hash);
+			buffer.putInt(HEADER_LENGTH + slot * SLOT_LENGTH + 4, buffer.position());
+			buffer.putShort((short) identity.length).put(identity);
+			buffer.putShort((short) entry.getValue().length).put(entry.getValue());
+		}
+		Path temp = Files.createTempFile(file.toAbsolutePath().getParent(), file.getFileName().toString(), ".tmp");
+		Files.write(temp, buffer.array());
+		Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	private static int hash(byte[] identity) {
+		// FNV-1a
+		int hash = 0x811c9dc5;
+		for (byte b : identity) {
+			hash = (hash ^ (b & 0xff)) * 0x01000193;
+		}
+		return hash;
+	}
+
+	/**
+	 * One loaded version of the file.
+	 */
+	private static class Table {
+		private final ByteBuffer buffer;
+		private final int mask;
+		private final int tableEnd;
+		private final long lastModified;
+
+		private Table(ByteBuffer buffer, long lastModified) {
+			this.buffer = buffer;
+			this.mask = buffer.getInt(4) - 1;
+			this.tableEnd = HEADER_LENGTH + (mask + 1) * SLOT_LENGTH;
+			this.lastModified = lastModified;
+		}
+
+		private static Table open(Path file, boolean mapped) throws IOException {
+			long lastModified = Files.getLastModifiedTime(file).toMillis();
+			ByteBuffer buffer;
+			if (mapped) {
+				try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+					// the mapping stays valid after the channel is closed
+					buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+				}
+			} else {
+				buffer = ByteBuffer.wrap(Files.readAllBytes(file));
+			}
+			if (buffer.limit() < HEADER_LENGTH || buffer.getInt(0) != MAGIC) {
+				throw new IOException(file + " is not a PSK file");
+			}
+			String error = check(buffer);
+			if (error != null) {
+				throw new IOException(file + " is not a valid PSK file, " + error);
+			}
+			return new Table(buffer, lastModified);
+		}
+
+		/**
+		 * Checks the header, so the slots are within the file. The slots and
+		 * entries are left to {@link #isValid(int)}, as checking them here
+		 * would read the whole file.
+		 * 
+		 * @return why the table is broken, or {@code null} if it isn't
+		 */
+		private static String check(ByteBuffer buffer) {
+			int slots = buffer.getInt(4);
+			int entries = buffer.getInt(8);
+			if (slots <= 0 || Integer.bitCount(slots) != 1) {
+				return "slot count " + slots + " is not a power of two";
+			}
+			long tableEnd = HEADER_LENGTH + (long) slots * SLOT_LENGTH;
+			if (tableEnd > buffer.limit()) {
+				return slots + " slots exceed the file's " + buffer.limit() + " bytes";
+			}
+			if (entries < 0 || entries > slots) {
+				return "entry count " + entries + " doesn't fit into " + slots + " slots";
+			}
+			return null;
+		}
+
+		/**
+		 * Checks that an entry lies within the file, so lookups never read
+		 * outside of it, e.g. of one that is still being written in place
+		 * instead of being replaced.
+		 * 
+		 * @return {@code true} if the entry can be read
+		 */
+		private boolean isValid(int entry) {
+			if (entry < tableEnd || entry > buffer.limit() - 2) {
+				return false;
+			}
+			long keyOffset = entry + 2L + (buffer.getShort(entry) & 0xffff);
+			return keyOffset <= buffer.limit() - 2
+					&& keyOffset + 2 + (buffer.getShort((int) keyOffset) & 0xffff) <= buffer.limit();
+		}
+
+		private int size() {
+			return buffer.getInt(8);
+		}
+
+		private SecretKey getKey(byte[] identity) {
+			byte[] key = getKeyBytes(identity);
+			if (key == null) {
+				return null;
+			}
+			// the handshake destroys the key after use, so every lookup gets its own
+			SecretKey secret = SecretUtil.create(key, "PSK");
+			Arrays.fill(key, (byte) 0);
+			return secret;
+		}
+
+		private byte[] getKeyBytes(byte[] identity) {
+			int entry = find(identity);
+			if (entry == 0) {
+				return null;
+			}
+			int keyOffset = entry + 2 + identity.length;
+			byte[] key = new byte[buffer.getShort(keyOffset) & 0xffff];
+			read(keyOffset + 2, key);
+			return key;
+		}
+
+		/**
+		 * @return the offset of the identity's entry, or 0 if there is none
+		 */
+		private int find(byte[] identity) {
+			int hash = hash(identity);
+			for (int slot = hash & mask, probes = 0; probes <= mask; slot = (slot + 1) & mask, probes++) {
+				int position = HEADER_LENGTH + slot * SLOT_LENGTH;
+				int entry = buffer.getInt(position + 4);
+				if (entry == 0) {
+					return 0;
+				}
+				if (buffer.getInt(position) == hash && isValid(entry) && matches(entry, identity)) {
+					return entry;
+				}
+			}
+			return 0;
+		}
+
+		private boolean matches(int entry, byte[] identity) {
+			if ((buffer.getShort(entry) & 0xffff) != identity.length) {
+				return false;
+			}
+			for (int i = 0; i < identity.length; i++) {
+				if (buffer.get(entry + 2 + i) != identity[i]) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		private List<String> identities(int max) {
+			List<String> identities = new ArrayList<>();
+			for (int slot = 0; slot <= mask && identities.size() < max; slot++) {
+				int entry = buffer.getInt(HEADER_LENGTH + slot * SLOT_LENGTH + 4);
+				if (entry != 0 && isValid(entry)) {
+					byte[] identity = new byte[buffer.getShort(entry) & 0xffff];
+					read(entry + 2, identity);
+					identities.add(new String(identity, StandardCharsets.UTF_8));
+				}
+			}
+			return identities;
+		}
+
+		private void read(int offset, byte[] target) {
+			// absolute reads, as lookups run concurrently on the same buffer
+			for (int i = 0; i < target.length; i++) {
+				target[i] = buffer.get(offset + i);
+			}
+		}
+	}
+
+	/**
+	 * @throws IllegalArgumentException if the text isn't an even number of hex
+	 *             digits
+	 */
+	private static byte[] parseHex(String hex) {
+		if (hex.length() % 2 != 0) {
+			throw new IllegalArgumentException("an odd number of hex digits");
+		}
+		byte[] bytes = new byte[hex.length() / 2];
+		for (int i = 0; i < hex.length(); i++) {
+			int digit = Character.digit(hex.charAt(i), 16);
+			if (digit < 0) {
+				// the key itself is not logged
+				throw new IllegalArgumentException("no hex digit at position " + i);
+			}
+			bytes[i / 2] |= digit << (i % 2 == 0 ? 4 : 0);
+		}
+		return bytes;
+	}
+
+	public static void main(String[] args) throws IOException {
+		Map<String, byte[]> keys = new LinkedHashMap<>();
+		if (args.length == 3 && args[0].equals("generate")) {
+			SecureRandom random = new SecureRandom();
+			for (int i = 0; i < Integer.parseInt(args[1]); i++) {
+				byte[] key = new byte[16];
+				random.nextBytes(key);
+				keys.put("device-" + i, key);
+			}
+		} else if (args.length == 3 && args[0].equals("convert")) {
+			try (BufferedReader in = Files.newBufferedReader(Paths.get(args[1]), StandardCharsets.UTF_8)) {
+				String line;
+				int number = 0;
+				while ((line = in.readLine()) != null) {
+					number++;
+					int separator = line.lastIndexOf(':');
+					if (separator > 0) {
+						String identity = line.substring(0, separator);
+						try {
+							keys.put(identity, parseHex(line.substring(separator + 1).trim()));
+						} catch (IllegalArgumentException e) {
+							LOG.error("Line {} of {}, the key of {} has {}", number, args[1], identity, e.getMessage());
+							return;
+						}
+					}
+				}
+			}
+		} else {
+			LOG.error("Usage: FilePskStore generate <count> <file> | convert <identity:hexkey lines> <file>");
+			return;
+		}
+		write(Paths.get(args[2]), keys);
+		LOG.info("Wrote {} identities to {}", keys.size(), args[2]);
+	}
+}
@@ -0,0 +1,269 @@
+package org.eclipse.californium.scandium.examples;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.security.GeneralSecurityException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.eclipse.californium.elements.AddressEndpointContext;
+import org.eclipse.californium.elements.DtlsEndpointContext;
+import org.eclipse.californium.elements.EndpointContext;
+import org.eclipse.californium.elements.MessageCallback;
+import org.eclipse.californium.elements.RawData;
+import org.eclipse.californium.scandium.DTLSConnector;
+import org.eclipse.californium.scandium.config.DtlsConnectorConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Drives full handshakes from a number of virtual clients toward one server,
+ * at a target rate which is ramped up linearly, and reports the handshake
+ * latencies along with the achieved rate.
+ *
+ * Each virtual client owns a connector. Before every handshake its connection
+ * state is cleared, so each handshake is a full one. The server's
+ * {@code -maxConnections} should be at least the number of virtual clients.
+ *
+ * With {@code -resume}, a virtual client instead resumes its previous session,
+ * which the server answers with an abbreviated handshake as long as it still
+ * has the session in its connection store or session cache. Full and
+ * abbreviated handshakes are reported separately.
+ */
+public class HandshakeLoadGenerator {
+	private static final Logger LOG = LoggerFactory.getLogger(HandshakeLoadGenerator.class);
+	private static final long TICK_MILLIS = 1;
+
+	private final ExampleDTLSClientConfig config;
+	private final InetSocketAddress peer;
+	private final LatencyHistogram fullLatencies = new LatencyHistogram();
+	private final LatencyHistogram abbreviatedLatencies = new LatencyHistogram();
+	private final AtomicLong succeeded = new AtomicLong();
+	private final AtomicLong abbreviated = new AtomicLong();
+	private final AtomicLong failed = new AtomicLong();
+	private final AtomicLong skipped = new AtomicLong();
+	private final Queue<VirtualClient> idleClients = new ConcurrentLinkedQueue<>();
+	private final Map<String, DtlsConnectorConfig> connectorConfigs = new HashMap<>();
+	private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+		Thread thread = new Thread(r, "LoadGenerator");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	public HandshakeLoadGenerator(ExampleDTLSClientConfig config) {
+		this.config = config;
+		this.peer = new InetSocketAddress(InetAddress.getLoopbackAddress(), config.getPort());
+	}
+
+	public void run() throws GeneralSecurityException, IOException, InterruptedException {
+		// with a PSK file, each virtual client acts as a device of its own
+		List<String> identities = Collections.singletonList(config.getPskIdentity());
+		if (config.getPskFile() != null) {
+			identities = FilePskStore.shared(config.getPskFile(), config.isPskFileMapped())
+					.getIdentities(config.getLoadClients());
+		}
+		// the virtual clients share their connection threads, instead of each having a pool sized to the machine
+		ExecutorService executor = ThreadModel.createExecutor(config.getExecutor(), config.getConnectionThreads());
+		if (executor == null) {
+			executor = ThreadModel.createExecutor(ConnectorExecutor.FIXED, config.getConnectionThreads());
+		}
+		List<VirtualClient> clients = new ArrayList<>();
+		for (int i = 0; i < config.getLoadClients(); i++) {
+			String identity = identities.get(i % identities.size());
+			VirtualClient client = new VirtualClient(new MeteredDTLSConnector(connectorConfig(identity)));
+			client.connector.setExecutor(executor);
+			client.connector.start();
+			clients.add(client);
+			idleClients.add(client);
+		}
+		LOG.info("Starting load of {} handshakes/s (0 for unbounded) from {} clients toward {}, ramp-up {} ms, duration {} ms",
+				config.getLoadRate(), clients.size(), peer, config.getLoadRampUp(), config.getLoadDuration());
+
+		long start = System.nanoTime();
+		ScheduledFuture<?> ticker = scheduler.scheduleAtFixedRate(new Ticker(start), 0, TICK_MILLIS,
+				TimeUnit.MILLISECONDS);
+		Thread.sleep(config.getLoadDuration());
+		ticker.cancel(false);
+		// let the handshakes in flight finish
+		long deadline = System.currentTimeMillis() + config.getLoadHandshakeTimeout();
+		while (idleClients.size() < clients.size() && System.currentTimeMillis() < deadline) {
+			Thread.sleep(TICK_MILLIS);
+		}
+		double elapsedSeconds = (System.nanoTime() - start) / 1e9;
+
+		scheduler.shutdownNow();
+		for (VirtualClient client : clients) {
+			client.connector.destroy();
+		}
+		executor.shutdownNow();
+		LOG.info("Handshakes: {} succeeded, {} failed, {} skipped for lack of an idle client", succeeded.get(),
+				failed.get(), skipped.get());
+		LOG.info("Achieved rate: {} handshakes/s",
+				String.format(Locale.ROOT, "%.1f", succeeded.get() / elapsedSeconds));
+		long full = succeeded.get() - abbreviated.get();
+		LOG.info("Full handshakes: {}, abbreviated: {} ({}% abbreviated)", full, abbreviated.get(),
+				String.format(Locale.ROOT, "%.1f",
+						succeeded.get() == 0 ? 0.0 : 100.0 * abbreviated.get() / succeeded.get()));
+		LOG.info("Full handshake latency: {}", fullLatencies.summary());
+		if (config.isResume()) {
+			LOG.info("Abbreviated handshake latency: {}", abbreviatedLatencies.summary());
+		}
+	}
+
+	private DtlsConnectorConfig connectorConfig(String pskIdentity) throws GeneralSecurityException, IOException {
+		DtlsConnectorConfig connectorConfig = connectorConfigs.get(pskIdentity);
+		if (connectorConfig == null) {
+			DtlsConnectorConfig.Builder builder = ExampleDTLSClient.createConfigBuilder(config, pskIdentity);
+			if (config.getReceiverThreads() == null) {
+				// each virtual client only receives a handful of records
+				builder.setReceiverThreadCount(1);
+			}
+			connectorConfig = builder.build();
+			connectorConfigs.put(pskIdentity, connectorConfig);
+		}
+		return connectorConfig;
+	}
+
+	/**
+	 * Hands out handshakes to idle clients at the (ramped) target rate.
+	 */
+	private class Ticker implements Runnable {
+		private final long start;
+		private long issued;
+
+		private Ticker(long start) {
+			this.start = start;
+		}
+
+		@Override
+		public void run() {
+			long due;
+			if (config.getLoadRate() <= 0) {
+				// unbounded, keep every client busy
+				due = issued + idleClients.size();
+			} else {
+				due = (long) expectedHandshakes((System.nanoTime() - start) / 1e9);
+			}
+			for (; issued < due; issued++) {
+				VirtualClient client = idleClients.poll();
+				if (client == null) {
+					skipped.addAndGet(due - issued);
+					issued = due;
+					break;
+				}
+				client.handshake();
+			}
+		}
+
+		/**
+		 * @return the number of handshakes due after the given time, with the
+		 *         rate growing linearly during the ramp-up
+		 */
+		private double expectedHandshakes(double seconds) {
+			double rate = config.getLoadRate();
+			double rampUp = config.getLoadRampUp() / 1000.0;
+			if (seconds < rampUp) {
+				return rate * seconds * seconds / (2 * rampUp);
+			}
+			return rate * rampUp / 2 + rate * (seconds - rampUp);
+		}
+	}
+
+	private class VirtualClient {
+		private final DTLSConnector connector;
+		// the session established by the previous handshake, if it succeeded
+		private volatile String sessionId;
+
+		private VirtualClient(DTLSConnector connector) {
+			this.connector = connector;
+		}
+
+		private void handshake() {
+			String resumed = config.isResume() ? sessionId : null;
+			if (resumed != null) {
+				connector.forceResumeSessionFor(peer);
+			} else {
+				// forget the previous session, so that a full handshake is done
+				connector.clearConnectionState();
+			}
+			Attempt attempt = new Attempt(this, resumed);
+			attempt.timeout = scheduler.schedule(() -> attempt.complete(null), config.getLoadHandshakeTimeout(),
+					TimeUnit.MILLISECONDS);
+			connector.send(RawData.outbound(new byte[0], new AddressEndpointContext(peer), attempt, false));
+		}
+	}
+
+	private class Attempt implements MessageCallback {
+		private final VirtualClient client;
+		private final String resumed;
+		private final long start = System.nanoTime();
+		private final AtomicBoolean done = new AtomicBoolean();
+		private volatile ScheduledFuture<?> timeout;
+
+		private Attempt(VirtualClient client, String resumed) {
+			this.client = client;
+			this.resumed = resumed;
+		}
+
+		private void complete(String sessionId) {
+			if (!done.compareAndSet(false, true)) {
+				return;
+			}
+			long latency = System.nanoTime() - start;
+			if (sessionId == null) {
+				failed.incrementAndGet();
+			} else if (sessionId.equals(resumed)) {
+				// the server accepted the offered session
+				abbreviatedLatencies.record(latency, TimeUnit.NANOSECONDS);
+				abbreviated.incrementAndGet();
+				succeeded.incrementAndGet();
+			} else {
+				fullLatencies.record(latency, TimeUnit.NANOSECONDS);
+				succeeded.incrementAndGet();
+			}
+			client.sessionId = sessionId;
+			ScheduledFuture<?> pending = timeout;
+			if (pending != null) {
+				pending.cancel(false);
+			}
+			idleClients.add(client);
+		}
+
+		@Override
+		public void onConnecting() {
+		}
+
+		@Override
+		public void onDtlsRetransmission(int flight) {
+		}
+
+		@Override
+		public void onContextEstablished(EndpointContext context) {
+			complete(context.get(DtlsEndpointContext.KEY_SESSION_ID));
+		}
+
+		@Override
+		public void onSent() {
+		}
+
+		@Override
+		public void onError(Throwable error) {
+			LOG.debug("Handshake failed", error);
+			complete(null);
+		}
+	}
+}
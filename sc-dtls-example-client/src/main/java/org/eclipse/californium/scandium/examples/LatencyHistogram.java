@@ -0,0 +1,85 @@
+package org.eclipse.californium.scandium.examples;
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A lock-free histogram of latencies in microseconds. Values are counted in
+ * log-linear buckets (16 per power of two), so reported percentiles are
+ * within about 6% of the recorded values.
+ */
+public class LatencyHistogram {
+	private static final int SUB_BUCKET_BITS = 4;
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+	private static final int BUCKETS = (64 - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+
+	private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+	private final AtomicLong total = new AtomicLong();
+	private final AtomicLong max = new AtomicLong();
+
+	public void record(long duration, TimeUnit unit) {
+		long micros = Math.max(0, unit.toMicros(duration));
+		counts.incrementAndGet(indexOf(micros));
+		total.incrementAndGet();
+		long current;
+		while (micros > (current = max.get()) && !max.compareAndSet(current, micros)) {
+		}
+	}
+
+	public long getCount() {
+		return total.get();
+	}
+
+	public long getMaxMicros() {
+		return max.get();
+	}
+
+	/**
+	 * @param quantile the quantile, for instance 0.99
+	 * @return the lower bound of the bucket holding the quantile, in
+	 *         microseconds, or 0 if nothing was recorded
+	 */
+	public long getQuantileMicros(double quantile) {
+		long count = total.get();
+		if (count == 0) {
+			return 0;
+		}
+		long rank = Math.max(1, (long) Math.ceil(quantile * count));
+		long seen = 0;
+		for (int index = 0; index < BUCKETS; index++) {
+			seen += counts.get(index);
+			if (seen >= rank) {
+				return Math.min(valueOf(index), max.get());
+			}
+		}
+		return max.get();
+	}
+
+	/**
+	 * @return p50/p99/p999/max in milliseconds, for reports
+	 */
+	public String summary() {
+		return String.format(Locale.ROOT, "p50=%.3fms p99=%.3fms p999=%.3fms max=%.3fms", getQuantileMicros(0.5) / 1000.0,
+				getQuantileMicros(0.99) / 1000.0, getQuantileMicros(0.999) / 1000.0, getMaxMicros() / 1000.0);
+	}
+
+	private static int indexOf(long value) {
+		if (value < SUB_BUCKETS) {
+			return (int) value;
+		}
+		int msb = 63 - Long.numberOfLeadingZeros(value);
+		int sub = (int) (value >>> (msb - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+		return (msb - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + sub;
+	}
+
+	private static long valueOf(int index) {
+		if (index < SUB_BUCKETS) {
+			return index;
+		}
+		int msb = index / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+		long sub = index % SUB_BUCKETS;
+		return (SUB_BUCKETS + sub) << (msb - SUB_BUCKET_BITS);
+	}
+}
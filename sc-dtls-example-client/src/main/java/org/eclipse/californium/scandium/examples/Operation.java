@@ -21,5 +21,29 @@ public enum Operation {
 	 * Full mode of operation entails a continuous loop of handshaking and echo-ing data.
 	 * In this mode the server only terminates if the engine is closed. 
 	 */
-	FULL
+	FULL,
+	
+	/**
+	 * Load generation, in which a number of virtual clients perform full handshakes at a target rate.
+	 * Latency percentiles, success/failure counts and the achieved rate are reported at the end.
+	 */
+	LOAD,
+	
+	/**
+	 * Record layer throughput measurement, in which a window of application records is kept in flight
+	 * toward an echoing server. Messages/s, bytes/s and round trip times are reported at the end.
+	 */
+	THROUGHPUT,
+	
+	/**
+	 * Replay of recorded datagram traces or a scenario file from many emulated peers. Throughput, flight latencies
+	 * and the divergence of the responses from the recorded ones are reported at the end.
+	 */
+	REPLAY,
+	
+	/**
+	 * Fleet emulation, in which many clients, each with its own identity, handshake and then report at an interval,
+	 * sharing their threads. Latencies and the heap taken per client are reported at the end.
+	 */
+	FLEET
 }
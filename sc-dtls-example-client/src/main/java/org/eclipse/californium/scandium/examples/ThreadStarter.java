@@ -1,45 +1,93 @@
 package org.eclipse.californium.scandium.examples;
 
 import java.io.BufferedReader;
+import java.io.BufferedOutputStream;
 import java.io.BufferedWriter;
+import java.io.DataInputStream;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
 import java.net.InetSocketAddress;
 import java.net.ServerSocket;
 import java.net.Socket;
-import java.util.function.Supplier;
+import java.net.SocketException;
+import java.nio.channels.ServerSocketChannel;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
  * We use this class to avoid having to restart the vm (which is can be a slow process). 
+ * Several learners may be connected at the same time, each of them driving its own client.
+ * They are either served by a blocking thread each, or all together by a {@link CommandSelector}.
+ * Commands are sent as lines or, to pipeline them, as {@link CommandFrames}.
+ * After an "events" command, the {@link ConnectorEvents} of the learner's client
+ * are pushed to it as lines starting with "event ", in the framed protocol with
+ * the id {@link CommandFrames#EVENT_ID}.
+ * A "quiesce" command waits until the client has nothing left to send.
  */
 public class ThreadStarter {
 	private static final Logger LOG = LoggerFactory.getLogger(ThreadStarter.class);
+	private static final long QUIESCE_DEADLINE_MILLIS = 1000;
+	// covers datagrams still in the socket buffer or waiting for a connection thread
+	private static final long QUIET_MILLIS = 2;
+	private static final long QUIESCE_POLL_MILLIS = 1;
+	private static final long MAX_QUIESCE_MILLIS = TimeUnit.HOURS.toMillis(1);
+	private static final CompletableFuture<Void> DONE = CompletableFuture.completedFuture(null);
 	
-	private Supplier<ExampleDTLSClient> supplier;
+	private Function<Integer, ExampleDTLSClient> supplier;
+	private ServerSocketChannel srvChannel;
 	private ServerSocket srvSocket;
-	private ExampleDTLSClient dtlsClientRunnable;
-	private Thread dtlsClientThread;
-	private Socket cmdSocket;
+	private CommandSelector commandSelector;
+	private Set<LearnerSession> sessions = new HashSet<>();
 	private Integer port;
 	private boolean continuous;
 	private Integer startTimeout;
+	private int maxSessions;
+	private boolean framed;
+	private LongAdder resets = Metrics.registry().counter(Metrics.RESETS);
+	// polls the clients of quiesce commands, instead of the threads executing the commands
+	private ScheduledExecutorService quiesceTimer = Executors.newSingleThreadScheduledExecutor(r -> {
+		Thread thread = new Thread(r, "QuiesceTimer");
+		thread.setDaemon(true);
+		return thread;
+	});
+	private LatencyHistogram resetLatency = Metrics.registry().histogram(Metrics.RESET_LATENCY);
 	
-	public ThreadStarter(Supplier<ExampleDTLSClient> supplier, String ipPort, boolean continuous, Integer runWait) throws IOException {
+	/**
+	 * @param supplier builds a client connecting to the given peer port, or to
+	 *                 the configured port if {@code null} is given
+	 */
+	public ThreadStarter(Function<Integer, ExampleDTLSClient> supplier, String ipPort, boolean continuous, Integer runWait, int maxSessions, boolean nonBlocking, boolean framed) throws IOException {
 		String[] addr = ipPort.split("\\:");
 		port = Integer.valueOf(addr[1]);
-		InetSocketAddress address = new InetSocketAddress(addr[0], port);		
+		InetSocketAddress address = new InetSocketAddress(addr[0], port);
 		this.supplier = supplier;
-		srvSocket = new ServerSocket();
+		srvChannel = ServerSocketChannel.open();
+		srvSocket = srvChannel.socket();
 		srvSocket.setReuseAddress(true);
 		srvSocket.bind(address);
+		if (nonBlocking) {
+			commandSelector = new CommandSelector(srvChannel, this::openSession, framed);
+		}
 		this.continuous = continuous;
 		this.startTimeout = runWait;
+		this.maxSessions = Math.max(1, maxSessions);
+		this.framed = framed;
 		
 		Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
 			@Override
@@ -55,78 +103,432 @@ public class ThreadStarter {
 	
 	public void run() throws IOException {
 		LOG.error("Listening at {}:{}", srvSocket.getInetAddress(), srvSocket.getLocalPort());
+		if (commandSelector != null) {
+			commandSelector.run();
+			return;
+		}
 		do {
-			cmdSocket = srvSocket.accept();
+			Socket cmdSocket;
+			try {
+				cmdSocket = srvSocket.accept();
+			} catch (SocketException e) {
+				if (srvSocket.isClosed()) {
+					// closed by an exit command or by the last session
+					return;
+				}
+				throw e;
+			}
+			LearnerSession session = new LearnerSession(cmdSocket);
+			if (maxSessions == 1) {
+				// a single learner is served in the accepting thread, as it always was
+				addSession(session);
+				if (!session.run()) {
+					return;
+				}
+				endSession(session);
+			} else if (!addSession(session)) {
+				LOG.warn("Rejecting learner at {}, all {} sessions are in use", cmdSocket.getRemoteSocketAddress(), maxSessions);
+				OutputStream out = cmdSocket.getOutputStream();
+				out.write(CommandFrames.busy(framed));
+				out.flush();
+				cmdSocket.close();
+			} else {
+				Thread sessionThread = new Thread(() -> {
+					try {
+						if (session.run()) {
+							endSession(session);
+						}
+					} catch (IOException e) {
+						LOG.error("Could not shut down thread starter", e);
+					}
+				}, "LearnerSession-" + cmdSocket.getPort());
+				sessionThread.start();
+			}
+		} while(continuous || maxSessions > 1);
+	}
+	
+	private LearnerSession openSession(Socket cmdSocket) {
+		LearnerSession session = new LearnerSession(cmdSocket);
+		if (!addSession(session)) {
+			LOG.warn("Rejecting learner at {}, all {} sessions are in use", cmdSocket.getRemoteSocketAddress(), maxSessions);
+			return null;
+		}
+		return session;
+	}
+	
+	private synchronized boolean addSession(LearnerSession session) {
+		if (sessions.size() >= maxSessions) {
+			return false;
+		}
+		sessions.add(session);
+		return true;
+	}
+	
+	private void endSession(LearnerSession session) throws IOException {
+		boolean last;
+		synchronized (this) {
+			if (!sessions.remove(session)) {
+				// already ended by a failure
+				return;
+			}
+			last = sessions.isEmpty();
+		}
+		// without continuous mode, we stop once no learner is left
+		if (last && !continuous) {
+			closeAll();
+		}
+	}
+	
+	/**
+	 * @return the quiesce command's argument at the given index, or the given
+	 *         default if there is none
+	 * @throws IllegalArgumentException if the argument is not a number of ms
+	 *             up to {@link #MAX_QUIESCE_MILLIS}
+	 */
+	private static long quiesceMillis(String[] words, int index, long defaultMillis) {
+		if (words.length <= index) {
+			return defaultMillis;
+		}
+		try {
+			long millis = Long.parseLong(words[index]);
+			if (0 <= millis && millis <= MAX_QUIESCE_MILLIS) {
+				return millis;
+			}
+		} catch (NumberFormatException e) {
+			// reported below
+		}
+		throw new IllegalArgumentException("quiesce takes 0 to " + MAX_QUIESCE_MILLIS + " ms, not " + words[index]);
+	}
+	
+	/**
+	 * @return the port given to reset
+	 * @throws IllegalArgumentException if the argument is not a port
+	 */
+	private static int port(String word) {
+		try {
+			int port = Integer.parseInt(word);
+			if (0 < port && port <= 0xffff) {
+				return port;
+			}
+		} catch (NumberFormatException e) {
+			// reported below
+		}
+		throw new IllegalArgumentException("reset takes a port of 1 to 65535, not " + word);
+	}
+	
+	private void recordReset(long start) {
+		resets.increment();
+		resetLatency.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+	}
+	
+	private void closeAll() throws IOException {
+		LOG.warn("Shutting down thread starter");
+		Set<LearnerSession> openSessions;
+		synchronized (this) {
+			openSessions = new HashSet<>(sessions);
+			sessions.clear();
+		}
+		for (LearnerSession session : openSessions) {
+			session.closeData();
+		}
+		if (commandSelector != null) {
+			commandSelector.stop();
+		}
+		quiesceTimer.shutdownNow();
+		srvSocket.close();
+	}
+	
+	/**
+	 * The command connection of one learner, along with the client it drives.
+	 */
+	private class LearnerSession implements CommandSelector.Connection {
+		private Socket cmdSocket;
+		private ExampleDTLSClient dtlsClientRunnable;
+		private Thread dtlsClientThread;
+		// the port of the learner's server, null for the configured one
+		private Integer peerPort;
+		private volatile boolean active = true;
+		// set by an exit command, which shuts down the whole thread starter
+		private volatile boolean exited;
+		// pushes lines to the learner, concurrently to the replies
+		private volatile CommandSelector.Replier pushed;
+		private boolean subscribed;
+		// the datagrams of the current client already reported by quiesce
+		private long reportedDatagrams;
+		
+		public LearnerSession(Socket cmdSocket) {
+			this.cmdSocket = cmdSocket;
+		}
+		
+		/**
+		 * Processes commands until the learner disconnects.
+		 *
+		 * @return {@code false}, if the learner shut the thread starter down
+		 */
+		public boolean run() throws IOException {
+			if (framed) {
+				return runFramed();
+			}
 			BufferedReader in = new BufferedReader(new InputStreamReader(cmdSocket.getInputStream()));
 			BufferedWriter out = new BufferedWriter(new OutputStreamWriter(cmdSocket.getOutputStream()));
-			dtlsClientThread = null;
-			while (true) {
+			CommandSelector.Replier replier = reply -> {
+				synchronized (out) {
+					out.write(reply);
+					out.newLine();
+					out.flush();
+				}
+			};
+			attached(replier);
+			while (active) {
 				try {
 					String cmd = in.readLine();
-					LOG.info("Received: {}", cmd);
 					if (cmd != null) {
-						switch(cmd.trim()) {
-							// command for killing the current server thread and spawning a new one
-						case "reset":
-							// empty space acts as reset, used for debugging purposes
-						case "":
-							// we interrupt any existing client thread
-							if (dtlsClientThread != null) {
-								dtlsClientThread.interrupt();
-								while (dtlsClientThread.isAlive()) {
-									Thread.sleep(10);
-								}
-							}
-							
-							out.write("ack");
-							out.newLine();
-							out.flush();
-							LOG.info("Waiting {} ms before starting the client", startTimeout);
-							
-							Thread.sleep(startTimeout);
-							
-							// spawn a new dtls client thread
-							dtlsClientRunnable = supplier.get();
-							dtlsClientThread = new Thread(dtlsClientRunnable);
-							dtlsClientThread.start();
-							
-							break;
-							
-							// command for exiting
-						case "exit":
-							closeAll();
-							return;
+						await(execute(cmd, replier));
+					} else {
+						LOG.info("Received Nothing");
+						closeData();
+						return true;
+					}
+				} catch (IOException e) {
+					fail(e);
+				}
+			}
+			return !exited;
+		}
+		
+		private boolean runFramed() throws IOException {
+			DataInputStream in = new DataInputStream(cmdSocket.getInputStream());
+			CommandFrames.Sink out = CommandFrames.sink(new BufferedOutputStream(cmdSocket.getOutputStream()));
+			attached(line -> out.write(CommandFrames.encode(CommandFrames.EVENT_ID, line)));
+			while (active) {
+				try {
+					CommandFrames.Frame frame = CommandFrames.read(in);
+					if (frame != null && frame.getId() == CommandFrames.EVENT_ID) {
+						out.write(CommandFrames.reservedId());
+					} else if (frame != null) {
+						CommandFrames.Replier replier = new CommandFrames.Replier(frame.getId(), out);
+						await(execute(frame.getCommand(), replier));
+						if (active) {
+							replier.complete();
 						}
 					} else {
 						LOG.info("Received Nothing");
 						closeData();
+						return true;
+					}
+				} catch (IOException e) {
+					fail(e);
+				}
+			}
+			return !exited;
+		}
+		
+		private void await(CompletableFuture<Void> done) throws IOException {
+			try {
+				done.join();
+			} catch (CompletionException e) {
+				throw e.getCause() instanceof IOException ? (IOException) e.getCause() : new IOException(e.getCause());
+			}
+		}
+		
+		@Override
+		public CompletableFuture<Void> execute(String cmd, CommandSelector.Replier out) throws IOException {
+			LOG.info("Received: {}", cmd);
+			try {
+				String[] words = cmd.trim().split("\\s+");
+				switch(words[0]) {
+					// command for killing the current server thread and spawning a new one
+					// learners sharing the thread starter pass the port of their server, as in "reset 20001"
+				case "reset":
+					// empty space acts as reset, used for debugging purposes
+				case "":
+					long resetStart = System.nanoTime();
+					if (words.length > 1) {
+						try {
+							peerPort = port(words[1]);
+						} catch (IllegalArgumentException e) {
+							// an unparsable argument, the current client is kept
+							out.reply("error " + e.getMessage());
+							break;
+						}
+					}
+					// we interrupt any existing client thread and wait until its connector is destroyed
+					if (dtlsClientThread != null) {
+						// the learner asked for it, so closing is no event
+						dtlsClientRunnable.setEventListener(null);
+						dtlsClientThread.interrupt();
+						dtlsClientRunnable.getStopFuture().get();
+						// not kept if no new client can be built
+						dtlsClientRunnable = null;
+						dtlsClientThread = null;
+					}
+					
+					LOG.info("Waiting {} ms before starting the client", startTimeout);
+					
+					if (startTimeout > 0) {
+						Thread.sleep(startTimeout);
+						// the deliberate wait is not part of the reset latency
+						resetStart += TimeUnit.MILLISECONDS.toNanos(startTimeout);
+					}
+					
+					// spawn a new dtls client thread
+					dtlsClientRunnable = supplier.apply(peerPort);
+					// subscribed before the client starts its handshake
+					subscribe();
+					reportedDatagrams = 0;
+					dtlsClientThread = new Thread(dtlsClientRunnable);
+					dtlsClientThread.start();
+					
+					// acknowledged once the client's socket is bound, further commands are only processed then
+					try {
+						dtlsClientRunnable.getStartFuture().get();
+					} catch (ExecutionException e) {
+						LOG.warn("Client could not be started", e.getCause());
+						out.reply("error client could not be started, " + e.getCause().getMessage());
 						break;
 					}
-				} catch (Exception e) {
-					String errorFileName = "ts.error." + port + ".log";
-					PrintWriter errorPw = new PrintWriter(new FileWriter(errorFileName));
-					e.printStackTrace(errorPw);
-					e.printStackTrace();
-					errorPw.close();
+					recordReset(resetStart);
+					out.reply("ack");
+					break;
+					
+					// command for querying the metrics, replied as a single line of name=value pairs
+				case "stats":
+					out.reply(Metrics.registry().snapshot());
+					break;
+					
+					// command for having the client's events pushed, to the current client and all following ones
+				case "events":
+					subscribed = true;
+					subscribe();
+					out.reply("ack");
+					break;
+					
+					// command for waiting until the client has nothing left to send, at most the given ms, as in "quiesce 500"
+					// the client must have been quiet for a while (optionally given in ms), also since the command came in
+					// replied with the number of datagrams sent since the last quiesce, followed by "busy" if the deadline passed
+				case "quiesce":
+					long quiesceStart = System.nanoTime();
+					long deadlineMillis;
+					long quietMillis;
+					try {
+						deadlineMillis = quiesceMillis(words, 1, QUIESCE_DEADLINE_MILLIS);
+						quietMillis = quiesceMillis(words, 2, QUIET_MILLIS);
+					} catch (IllegalArgumentException e) {
+						// an unparsable argument, which only concerns this command
+						out.reply("error " + e.getMessage());
+						break;
+					}
+					long deadline = quiesceStart + TimeUnit.MILLISECONDS.toNanos(deadlineMillis);
+					long quietNanos = TimeUnit.MILLISECONDS.toNanos(quietMillis);
+					if (dtlsClientRunnable == null) {
+						out.reply("0");
+						break;
+					}
+					return quiesce(dtlsClientRunnable, quiesceStart, deadline, quietNanos, out);
+					
+					// command for exiting
+				case "exit":
+					exited = true;
+					active = false;
+					closeData();
 					closeAll();
-					return;
+					break;
 				}
+			} catch (Exception e) {
+				// also a client that can't be rebuilt, after the previous one was stopped
+				fail(e);
+			}
+			return DONE;
+		}
+		
+		/**
+		 * Checks the client on the quiesce timer until it is quiescent or the
+		 * deadline passed, and replies then.
+		 *
+		 * @return completed once replied
+		 */
+		private CompletableFuture<Void> quiesce(ExampleDTLSClient client, long start, long deadline, long quietNanos,
+				CommandSelector.Replier out) {
+			CompletableFuture<Void> done = new CompletableFuture<>();
+			Runnable check = new Runnable() {
+				@Override
+				public void run() {
+					try {
+						long now = System.nanoTime();
+						boolean quiescent = now - start >= quietNanos && client.isQuiescent(quietNanos, deadline);
+						if (!quiescent && now < deadline) {
+							quiesceTimer.schedule(this, QUIESCE_POLL_MILLIS, TimeUnit.MILLISECONDS);
+							return;
+						}
+						long sent = client.getDatagramsSent() - reportedDatagrams;
+						reportedDatagrams += sent;
+						out.reply(quiescent ? String.valueOf(sent) : sent + " busy");
+						done.complete(null);
+					} catch (IOException | RejectedExecutionException e) {
+						done.completeExceptionally(e);
+					}
+				}
+			};
+			check.run();
+			return done;
+		}
+		
+		@Override
+		public void attached(CommandSelector.Replier pushed) {
+			this.pushed = pushed;
+		}
+		
+		private void subscribe() {
+			if (subscribed && dtlsClientRunnable != null) {
+				dtlsClientRunnable.setEventListener(this::push);
 			}
-		} while(continuous);
-	}
-	
-	private void closeAll() throws IOException {
-		LOG.warn("Shutting down thread starter");
-		closeData();
-		srvSocket.close();
-	}
-	
-	private void closeData() throws IOException{
-		if (dtlsClientThread != null) {
-			dtlsClientThread.interrupt();
 		}
-		if (cmdSocket != null) {
-			cmdSocket.close();
+		
+		private void push(String event) {
+			try {
+				pushed.reply("event " + event);
+			} catch (IOException e) {
+				// the learner is gone, which the command loop notices by itself
+				LOG.debug("Could not push event {}", event, e);
+			}
+		}
+		
+		@Override
+		public boolean isActive() {
+			return active;
+		}
+		
+		@Override
+		public void disconnected() throws IOException {
+			LOG.info("Received Nothing");
+			closeData();
+			endSession(this);
+		}
+		
+		private void fail(Exception e) throws IOException {
+			active = false;
+			if (cmdSocket.isClosed()) {
+				// closed by another session's exit command
+				closeData();
+				return;
+			}
+			String errorFileName = "ts.error." + port + ".log";
+			PrintWriter errorPw = new PrintWriter(new FileWriter(errorFileName));
+			e.printStackTrace(errorPw);
+			e.printStackTrace();
+			errorPw.close();
+			// the other learners' sessions go on
+			closeData();
+			endSession(this);
+		}
+		
+		private void closeData() throws IOException{
+			if (dtlsClientThread != null) {
+				dtlsClientThread.interrupt();
+			}
+			if (cmdSocket != null) {
+				cmdSocket.close();
+			}
 		}
 	}
-}
+}
\ No newline at end of file
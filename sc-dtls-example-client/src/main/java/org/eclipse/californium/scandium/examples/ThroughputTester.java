@@ -0,0 +1,202 @@
+package org.eclipse.californium.scandium.examples;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.eclipse.californium.elements.AddressEndpointContext;
+import org.eclipse.californium.elements.EndpointContext;
+import org.eclipse.californium.elements.MessageCallback;
+import org.eclipse.californium.elements.RawData;
+import org.eclipse.californium.scandium.DTLSConnector;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Measures record layer throughput against a server echoing application data
+ * (operation FULL). After a handshake, a window of records is kept in flight,
+ * each echo being answered by a new record. Records cycle through the
+ * configured payload sizes and carry a sequence number, by which the echoes
+ * are matched to their round trip times. Records not echoed within the
+ * handshake timeout count as lost and are replaced.
+ */
+public class ThroughputTester {
+	private static final Logger LOG = LoggerFactory.getLogger(ThroughputTester.class);
+	private static final int SEQUENCE_LENGTH = Long.BYTES;
+	private static final long SWEEP_MILLIS = 100;
+
+	private final ExampleDTLSClientConfig config;
+	private final InetSocketAddress peer;
+	private final AddressEndpointContext peerContext;
+	private final int[] sizes;
+	private final Map<Long, Long> inFlight = new ConcurrentHashMap<>();
+	private final AtomicLong sequence = new AtomicLong();
+	private final AtomicLong echoed = new AtomicLong();
+	private final AtomicLong echoedBytes = new AtomicLong();
+	private final AtomicLong lost = new AtomicLong();
+	private final AtomicLong failed = new AtomicLong();
+	private final LatencyHistogram roundTrips = new LatencyHistogram();
+	private volatile boolean sending;
+	private DTLSConnector connector;
+
+	public ThroughputTester(ExampleDTLSClientConfig config) {
+		this.config = config;
+		this.peer = new InetSocketAddress(InetAddress.getLoopbackAddress(), config.getPort());
+		this.peerContext = new AddressEndpointContext(peer);
+		List<Integer> configured = config.getThroughputSizes();
+		this.sizes = new int[configured.size()];
+		for (int i = 0; i < sizes.length; i++) {
+			if (configured.get(i) < SEQUENCE_LENGTH) {
+				LOG.warn("Payload size {} is raised to {} to hold the sequence number", configured.get(i), SEQUENCE_LENGTH);
+			}
+			sizes[i] = Math.max(SEQUENCE_LENGTH, configured.get(i));
+		}
+	}
+
+	public void run() throws GeneralSecurityException, IOException, InterruptedException {
+		connector = new MeteredDTLSConnector(ExampleDTLSClient.createConfigBuilder(config).build());
+		connector.setRawDataReceiver(this::receive);
+		ExecutorService executor = ThreadModel.createExecutor(config.getExecutor(), config.getConnectionThreads());
+		if (executor != null) {
+			connector.setExecutor(executor);
+		}
+		connector.start();
+		try {
+			handshake();
+			LOG.info("Sending records of {} bytes to {} with a window of {} for {} ms", config.getThroughputSizes(),
+					peer, config.getThroughputWindow(), config.getLoadDuration());
+
+			sending = true;
+			long start = System.nanoTime();
+			for (int i = 0; i < config.getThroughputWindow(); i++) {
+				sendNext();
+			}
+			long end = start + TimeUnit.MILLISECONDS.toNanos(config.getLoadDuration());
+			while (System.nanoTime() < end) {
+				Thread.sleep(SWEEP_MILLIS);
+				sweep();
+			}
+			sending = false;
+			double seconds = (System.nanoTime() - start) / 1e9;
+
+			LOG.info("Records: {} echoed, {} lost, {} failed to send", echoed.get(), lost.get(), failed.get());
+			LOG.info("Throughput: {} messages/s, {} bytes/s",
+					String.format(Locale.ROOT, "%.1f", echoed.get() / seconds),
+					String.format(Locale.ROOT, "%.0f", echoedBytes.get() / seconds));
+			LOG.info("Round trip time: {}", roundTrips.summary());
+		} finally {
+			connector.destroy();
+			if (executor != null) {
+				executor.shutdownNow();
+			}
+		}
+	}
+
+	private void handshake() throws InterruptedException {
+		CompletableFuture<Void> established = new CompletableFuture<>();
+		connector.send(RawData.outbound(new byte[0], peerContext, new Callback() {
+			@Override
+			public void onContextEstablished(EndpointContext context) {
+				established.complete(null);
+			}
+
+			@Override
+			public void onError(Throwable error) {
+				established.completeExceptionally(error);
+			}
+		}, false));
+		try {
+			established.get(config.getLoadHandshakeTimeout(), TimeUnit.MILLISECONDS);
+		} catch (ExecutionException | TimeoutException e) {
+			throw new IllegalStateException("Handshake with " + peer + " failed", e);
+		}
+	}
+
+	private void sendNext() {
+		if (!sending) {
+			return;
+		}
+		long seq = sequence.getAndIncrement();
+		ByteBuffer payload = ByteBuffer.allocate(sizes[(int) (seq % sizes.length)]);
+		payload.putLong(seq);
+		inFlight.put(seq, System.nanoTime());
+		connector.send(RawData.outbound(payload.array(), peerContext, new Callback() {
+			@Override
+			public void onError(Throwable error) {
+				if (inFlight.remove(seq) != null) {
+					LOG.debug("Could not send record of {} bytes", payload.capacity(), error);
+					failed.incrementAndGet();
+					sendNext();
+				}
+			}
+		}, false));
+	}
+
+	private void receive(RawData raw) {
+		byte[] bytes = raw.getBytes();
+		if (bytes.length < SEQUENCE_LENGTH) {
+			// the echo of the handshake trigger
+			return;
+		}
+		Long sent = inFlight.remove(ByteBuffer.wrap(bytes).getLong());
+		if (sent != null) {
+			roundTrips.record(System.nanoTime() - sent, TimeUnit.NANOSECONDS);
+			echoed.incrementAndGet();
+			echoedBytes.addAndGet(bytes.length);
+			sendNext();
+		}
+	}
+
+	/**
+	 * Replaces the records whose echo is overdue.
+	 */
+	private void sweep() {
+		long overdue = System.nanoTime() - TimeUnit.MILLISECONDS.toNanos(config.getLoadHandshakeTimeout());
+		Iterator<Map.Entry<Long, Long>> entries = inFlight.entrySet().iterator();
+		while (entries.hasNext()) {
+			Map.Entry<Long, Long> entry = entries.next();
+			if (entry.getValue() - overdue < 0 && inFlight.remove(entry.getKey()) != null) {
+				lost.incrementAndGet();
+				sendNext();
+			}
+		}
+	}
+
+	/**
+	 * A message callback reacting only to what is overridden.
+	 */
+	private static class Callback implements MessageCallback {
+		@Override
+		public void onConnecting() {
+		}
+
+		@Override
+		public void onDtlsRetransmission(int flight) {
+		}
+
+		@Override
+		public void onContextEstablished(EndpointContext context) {
+		}
+
+		@Override
+		public void onSent() {
+		}
+
+		@Override
+		public void onError(Throwable error) {
+		}
+	}
+}
@@ -0,0 +1,13 @@
+package org.eclipse.californium.scandium.examples;
+
+/**
+ * Limits the trace file size in MB to what a mapped {@link DatagramRecorder}
+ * file can hold, its size in bytes is an int.
+ */
+public class TraceFileSizeValidator extends PositiveIntegerValidator {
+
+	@Override
+	protected int getMaximum() {
+		return Integer.MAX_VALUE / (1024 * 1024);
+	}
+}
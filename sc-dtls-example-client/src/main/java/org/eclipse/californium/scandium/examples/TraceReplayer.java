@@ -0,0 +1,555 @@
+package org.eclipse.californium.scandium.examples;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.eclipse.californium.elements.util.StringUtil;
+import org.eclipse.californium.scandium.dtls.ContentType;
+import org.eclipse.californium.scandium.dtls.HandshakeType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Replays the datagrams of recorded traces (see {@link DatagramRecorder}) or
+ * of a scenario file toward a server, and reports throughput, latency and how
+ * far the server's responses diverge from the recorded ones.
+ *
+ * Each recorded peer is emulated by a socket of its own, all peers replaying
+ * in parallel. A peer's datagrams are grouped into flights, a flight being the
+ * datagrams sent until the next response, which are the flight's expected
+ * responses. Flights are sent at their recorded time divided by
+ * {@code -replaySpeed}, or with a speed of 0 as soon as the previous flight's
+ * responses arrived. A flight's latency is the time to its first response.
+ *
+ * Responses are compared by their record type, the message type of plaintext
+ * handshakes, and their length, as their content differs by the random values
+ * of each handshake. The recorded cookie was issued for another address, so
+ * the cookie of the last HELLO_VERIFY_REQUEST an emulated peer received is put
+ * into its CLIENT_HELLOs carrying a cookie, and the server goes on with its
+ * SERVER_HELLO and key exchange. The later records are replayed as recorded,
+ * their keys derive from the recorded random values, so the server can't
+ * verify the client's FINISHED and the replayed handshake ends there.
+ *
+ * A scenario file holds a datagram per line, with its time in milliseconds,
+ * the name of the emulated peer, {@code >} for a datagram sent to the server
+ * or {@code <} for an expected response, and the datagram in hex. Empty lines
+ * and lines starting with {@code #} are skipped.
+ *
+ * <pre>
+ * 0  a &gt; 16fefd00000000000000000036010000...
+ * 3  a &lt; 16fefd0000000000000000002303000017...
+ * </pre>
+ */
+public class TraceReplayer {
+	private static final Logger LOG = LoggerFactory.getLogger(TraceReplayer.class);
+	private static final int RECORD_HEADER_LENGTH = 13;
+	private static final int HANDSHAKE_HEADER_LENGTH = 12;
+	// the protocol version and the random value precede a CLIENT_HELLO's session id
+	private static final int RANDOM_LENGTH = 32;
+
+	/**
+	 * The side a trace was recorded at, which tells the datagrams sent to the
+	 * server from its responses.
+	 */
+	public enum RecordedBy {
+		SERVER, CLIENT
+	}
+
+	private final ExampleDTLSClientConfig config;
+	private final InetSocketAddress peer;
+	private final double speed;
+	private final LatencyHistogram latencies = new LatencyHistogram();
+	private final AtomicLong flightsSent = new AtomicLong();
+	private final AtomicLong flightsDiverged = new AtomicLong();
+	private final AtomicLong flightsUnanswered = new AtomicLong();
+	private final AtomicLong peersDiverged = new AtomicLong();
+	private final AtomicLong datagramsSent = new AtomicLong();
+	private final AtomicLong bytesSent = new AtomicLong();
+	private final AtomicLong datagramsReceived = new AtomicLong();
+	private final AtomicLong extraResponses = new AtomicLong();
+	private final AtomicLong errors = new AtomicLong();
+	private final AtomicReference<String> firstDivergence = new AtomicReference<>();
+	private final ScheduledExecutorService scheduler;
+	private volatile boolean running;
+	private CountDownLatch done;
+	private long origin;
+	private long start;
+
+	public TraceReplayer(ExampleDTLSClientConfig config) {
+		this.config = config;
+		this.peer = new InetSocketAddress(InetAddress.getLoopbackAddress(), config.getPort());
+		this.speed = config.getReplaySpeed();
+		int threads = config.getConnectionThreads() != null ? config.getConnectionThreads()
+				: Runtime.getRuntime().availableProcessors();
+		this.scheduler = Executors.newScheduledThreadPool(threads, r -> {
+			Thread thread = new Thread(r, "TraceReplayer");
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	public void run() throws IOException, InterruptedException {
+		Map<String, List<Flight>> recorded = config.getReplayScenario() != null
+				? readScenario(Paths.get(config.getReplayScenario()))
+				: readTraces(config.getReplayTrace(), config.getReplayRecordedBy());
+		if (recorded.isEmpty()) {
+			LOG.warn("Nothing to replay");
+			return;
+		}
+		origin = Long.MAX_VALUE;
+		int flights = 0;
+		for (List<Flight> peerFlights : recorded.values()) {
+			origin = Math.min(origin, peerFlights.get(0).nanos);
+			flights += peerFlights.size();
+		}
+
+		Selector selector = Selector.open();
+		List<EmulatedPeer> peers = new ArrayList<>();
+		for (int copy = 0; copy < config.getReplayCopies(); copy++) {
+			for (Map.Entry<String, List<Flight>> entry : recorded.entrySet()) {
+				String name = config.getReplayCopies() > 1 ? entry.getKey() + "#" + copy : entry.getKey();
+				DatagramChannel channel = DatagramChannel.open();
+				channel.connect(peer);
+				channel.configureBlocking(false);
+				EmulatedPeer emulated = new EmulatedPeer(name, channel, entry.getValue());
+				channel.register(selector, SelectionKey.OP_READ, emulated);
+				peers.add(emulated);
+			}
+		}
+		done = new CountDownLatch(peers.size());
+		running = true;
+		Thread receiver = new Thread(() -> receive(selector), "TraceReplayer-Receiver");
+		receiver.setDaemon(true);
+		receiver.start();
+
+		LOG.info("Replaying {} flights of {} recorded peers from {} emulated peers toward {} at speed {} (0 for as fast as possible)",
+				flights, recorded.size(), peers.size(), peer, speed);
+		start = System.nanoTime();
+		for (EmulatedPeer emulated : peers) {
+			emulated.schedule();
+		}
+		done.await();
+		double elapsedSeconds = (System.nanoTime() - start) / 1e9;
+
+		running = false;
+		selector.wakeup();
+		receiver.join(TimeUnit.SECONDS.toMillis(1));
+		scheduler.shutdownNow();
+		for (EmulatedPeer emulated : peers) {
+			emulated.channel.close();
+		}
+		selector.close();
+
+		long sent = flightsSent.get();
+		LOG.info("Flights: {} replayed in {} s, {} diverged, {} unanswered; {} send or receive errors", sent,
+				String.format(Locale.ROOT, "%.1f", elapsedSeconds), flightsDiverged.get(), flightsUnanswered.get(),
+				errors.get());
+		LOG.info("Throughput: {} flights/s, {} datagrams/s ({} bytes/s) sent, {} datagrams/s received",
+				String.format(Locale.ROOT, "%.1f", sent / elapsedSeconds),
+				String.format(Locale.ROOT, "%.1f", datagramsSent.get() / elapsedSeconds),
+				String.format(Locale.ROOT, "%.1f", bytesSent.get() / elapsedSeconds),
+				String.format(Locale.ROOT, "%.1f", datagramsReceived.get() / elapsedSeconds));
+		LOG.info("Flight latency to the first response: {}", latencies.summary());
+		LOG.info("Divergence: {}% of flights, {} of {} peers, {} responses outside of any flight",
+				String.format(Locale.ROOT, "%.1f", sent == 0 ? 0.0 : 100.0 * flightsDiverged.get() / sent),
+				peersDiverged.get(), peers.size(), extraResponses.get());
+		if (firstDivergence.get() != null) {
+			LOG.info("First divergence: {}", firstDivergence.get());
+		}
+	}
+
+	private void receive(Selector selector) {
+		ByteBuffer buffer = ByteBuffer.allocate(0x10000);
+		while (running) {
+			try {
+				selector.select();
+				long now = System.nanoTime();
+				for (SelectionKey key : selector.selectedKeys()) {
+					EmulatedPeer emulated = (EmulatedPeer) key.attachment();
+					try {
+						while (true) {
+							buffer.clear();
+							if (emulated.channel.read(buffer) <= 0) {
+								break;
+							}
+							datagramsReceived.incrementAndGet();
+							emulated.receive(signature(buffer.array(), buffer.position()),
+									cookie(buffer.array(), buffer.position()), now);
+						}
+					} catch (IOException e) {
+						// most likely ICMP port unreachable, as long as the server is not up
+						errors.incrementAndGet();
+					}
+				}
+				selector.selectedKeys().clear();
+			} catch (IOException e) {
+				if (running) {
+					LOG.error("Receiving failed", e);
+				}
+				break;
+			}
+		}
+	}
+
+	/**
+	 * @return the flights of each peer in the given trace files
+	 */
+	public static Map<String, List<Flight>> readTraces(List<String> files, RecordedBy recordedBy) throws IOException {
+		List<TraceRecord> records = new ArrayList<>();
+		for (String file : files) {
+			ByteBuffer in = ByteBuffer.wrap(Files.readAllBytes(Paths.get(file)));
+			if (in.remaining() < DatagramRecorder.HEADER_LENGTH || in.getInt() != DatagramRecorder.MAGIC) {
+				throw new IOException(file + " is not a datagram trace");
+			}
+			in.position(DatagramRecorder.HEADER_LENGTH);
+			while (in.remaining() >= 2) {
+				int begin = in.position();
+				int length = in.getShort() & 0xffff;
+				if (length == 0 || begin + length > in.limit()) {
+					// the end a crashed recorder left
+					break;
+				}
+				long nanos = in.getLong();
+				byte direction = in.get();
+				int localPort = in.getShort() & 0xffff;
+				byte[] address = new byte[in.get() & 0xff];
+				in.get(address);
+				int peerPort = in.getShort() & 0xffff;
+				byte[] datagram = new byte[length - (in.position() - begin)];
+				in.get(datagram);
+				String name = InetAddress.getByAddress(address).getHostAddress() + ":" + peerPort + "@" + localPort;
+				boolean sent = (direction == DatagramRecorder.INBOUND) == (recordedBy == RecordedBy.SERVER);
+				records.add(new TraceRecord(nanos, name, sent, datagram));
+			}
+		}
+		// the recorder writes in the order the datagrams were queued, not strictly by time
+		records.sort(Comparator.comparingLong(record -> record.nanos));
+		Map<String, List<Flight>> flights = new LinkedHashMap<>();
+		for (TraceRecord record : records) {
+			add(flights, record.name, record.nanos, record.sent, record.datagram);
+		}
+		return flights;
+	}
+
+	/**
+	 * @return the flights of each peer in the given scenario file
+	 */
+	public static Map<String, List<Flight>> readScenario(Path file) throws IOException {
+		Map<String, List<Flight>> flights = new LinkedHashMap<>();
+		try (BufferedReader in = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+			String line;
+			int number = 0;
+			while ((line = in.readLine()) != null) {
+				number++;
+				line = line.trim();
+				if (line.isEmpty() || line.startsWith("#")) {
+					continue;
+				}
+				String[] words = line.split("\\s+");
+				try {
+					if (words.length != 4 || !(words[2].equals(">") || words[2].equals("<"))) {
+						throw new IllegalArgumentException("expected <ms> <peer> >|< <hex>");
+					}
+					long nanos = (long) (Double.parseDouble(words[0]) * 1e6);
+					add(flights, words[1], nanos, words[2].equals(">"), StringUtil.hex2ByteArray(words[3]));
+				} catch (IllegalArgumentException e) {
+					throw new IOException(file + ":" + number + ": " + e.getMessage(), e);
+				}
+			}
+		}
+		return flights;
+	}
+
+	private static void add(Map<String, List<Flight>> flights, String name, long nanos, boolean sent, byte[] datagram) {
+		List<Flight> peerFlights = flights.get(name);
+		Flight last = peerFlights == null ? null : peerFlights.get(peerFlights.size() - 1);
+		if (sent) {
+			if (last == null || !last.expected.isEmpty()) {
+				last = new Flight(peerFlights == null ? 0 : peerFlights.size(), nanos);
+				if (peerFlights == null) {
+					peerFlights = new ArrayList<>();
+					flights.put(name, peerFlights);
+				}
+				peerFlights.add(last);
+			}
+			last.datagrams.add(datagram);
+		} else if (last != null) {
+			last.expected.add(signature(datagram, datagram.length));
+		}
+		// responses before the peer's first datagram belong to a conversation begun before the recording
+	}
+
+	/**
+	 * @return the record type, for plaintext handshakes also the message type,
+	 *         and the length of the datagram
+	 */
+	static String signature(byte[] datagram, int length) {
+		if (length < RECORD_HEADER_LENGTH) {
+			return "?:" + length;
+		}
+		ContentType type = ContentType.getTypeByValue(datagram[0] & 0xff);
+		String name = type == null ? Integer.toString(datagram[0] & 0xff) : type.name();
+		int epoch = ((datagram[3] & 0xff) << 8) | (datagram[4] & 0xff);
+		if (type == ContentType.HANDSHAKE && epoch == 0 && length > RECORD_HEADER_LENGTH) {
+			HandshakeType handshakeType = HandshakeType.getTypeByCode(datagram[RECORD_HEADER_LENGTH] & 0xff);
+			name += "/" + (handshakeType == null ? Integer.toString(datagram[RECORD_HEADER_LENGTH] & 0xff)
+					: handshakeType.name());
+		}
+		return name + ":" + length;
+	}
+
+	/**
+	 * @return the cookie of a plaintext HELLO_VERIFY_REQUEST, or {@code null}
+	 *         if the datagram is none
+	 */
+	static byte[] cookie(byte[] datagram, int length) {
+		// after the server version
+		int offset = RECORD_HEADER_LENGTH + HANDSHAKE_HEADER_LENGTH + 2;
+		if (length <= offset || !isPlaintextHandshake(datagram, HandshakeType.HELLO_VERIFY_REQUEST)) {
+			return null;
+		}
+		int cookieLength = datagram[offset] & 0xff;
+		if (offset + 1 + cookieLength > length) {
+			return null;
+		}
+		return Arrays.copyOfRange(datagram, offset + 1, offset + 1 + cookieLength);
+	}
+
+	/**
+	 * Puts the cookie into a plaintext CLIENT_HELLO in place of its recorded
+	 * one, adjusting the record, message and fragment length. A CLIENT_HELLO
+	 * without a cookie is left as it is, as the first one of a handshake, and
+	 * so is a fragmented one.
+	 *
+	 * @return the datagram with the given cookie, or the datagram itself if it
+	 *         has no cookie to replace
+	 */
+	static byte[] withCookie(byte[] datagram, byte[] cookie) {
+		if (datagram.length <= RECORD_HEADER_LENGTH + HANDSHAKE_HEADER_LENGTH
+				|| !isPlaintextHandshake(datagram, HandshakeType.CLIENT_HELLO)) {
+			return datagram;
+		}
+		int recordLength = number(datagram, 11, 2);
+		int messageLength = number(datagram, RECORD_HEADER_LENGTH + 1, 3);
+		int fragmentOffset = number(datagram, RECORD_HEADER_LENGTH + 6, 3);
+		int fragmentLength = number(datagram, RECORD_HEADER_LENGTH + 9, 3);
+		int end = RECORD_HEADER_LENGTH + recordLength;
+		if (fragmentOffset != 0 || fragmentLength != messageLength
+				|| recordLength != HANDSHAKE_HEADER_LENGTH + messageLength || end > datagram.length) {
+			return datagram;
+		}
+		int sessionIdOffset = RECORD_HEADER_LENGTH + HANDSHAKE_HEADER_LENGTH + 2 + RANDOM_LENGTH;
+		if (sessionIdOffset >= end) {
+			return datagram;
+		}
+		int cookieOffset = sessionIdOffset + 1 + (datagram[sessionIdOffset] & 0xff);
+		if (cookieOffset >= end) {
+			return datagram;
+		}
+		int recordedLength = datagram[cookieOffset] & 0xff;
+		int cookieEnd = cookieOffset + 1 + recordedLength;
+		if (recordedLength == 0 || cookieEnd > end) {
+			return datagram;
+		}
+		int delta = cookie.length - recordedLength;
+		byte[] patched = new byte[datagram.length + delta];
+		System.arraycopy(datagram, 0, patched, 0, cookieOffset);
+		patched[cookieOffset] = (byte) cookie.length;
+		System.arraycopy(cookie, 0, patched, cookieOffset + 1, cookie.length);
+		// further records of the datagram follow unchanged
+		System.arraycopy(datagram, cookieEnd, patched, cookieEnd + delta, datagram.length - cookieEnd);
+		putNumber(patched, 11, 2, recordLength + delta);
+		putNumber(patched, RECORD_HEADER_LENGTH + 1, 3, messageLength + delta);
+		putNumber(patched, RECORD_HEADER_LENGTH + 9, 3, fragmentLength + delta);
+		return patched;
+	}
+
+	private static boolean isPlaintextHandshake(byte[] datagram, HandshakeType type) {
+		return (datagram[0] & 0xff) == ContentType.HANDSHAKE.getCode() && number(datagram, 3, 2) == 0
+				&& (datagram[RECORD_HEADER_LENGTH] & 0xff) == type.getCode();
+	}
+
+	private static int number(byte[] bytes, int offset, int length) {
+		int number = 0;
+		for (int i = 0; i < length; i++) {
+			number = (number << 8) | (bytes[offset + i] & 0xff);
+		}
+		return number;
+	}
+
+	private static void putNumber(byte[] bytes, int offset, int length, int number) {
+		for (int i = length - 1; i >= 0; i--) {
+			bytes[offset + i] = (byte) number;
+			number >>>= 8;
+		}
+	}
+
+	/**
+	 * The datagrams a peer sends in a row, and the signatures of the responses
+	 * recorded for them.
+	 */
+	public static class Flight {
+		private final int index;
+		private final long nanos;
+		private final List<byte[]> datagrams = new ArrayList<>();
+		private final List<String> expected = new ArrayList<>();
+
+		private Flight(int index, long nanos) {
+			this.index = index;
+			this.nanos = nanos;
+		}
+	}
+
+	private static class TraceRecord {
+		private final long nanos;
+		private final String name;
+		private final boolean sent;
+		private final byte[] datagram;
+
+		private TraceRecord(long nanos, String name, boolean sent, byte[] datagram) {
+			this.nanos = nanos;
+			this.name = name;
+			this.sent = sent;
+			this.datagram = datagram;
+		}
+	}
+
+	private class EmulatedPeer {
+		private final String name;
+		private final DatagramChannel channel;
+		private final List<Flight> flights;
+		private final List<String> responses = new ArrayList<>();
+		private int next;
+		private Flight current;
+		private long sentNanos;
+		private boolean diverged;
+		private ScheduledFuture<?> timeout;
+		// of the last HELLO_VERIFY_REQUEST, for the CLIENT_HELLO answering it
+		private byte[] cookie;
+
+		private EmulatedPeer(String name, DatagramChannel channel, List<Flight> flights) {
+			this.name = name;
+			this.channel = channel;
+			this.flights = flights;
+		}
+
+		private void schedule() {
+			long delay = 0;
+			if (speed > 0) {
+				delay = start + (long) ((flights.get(next).nanos - origin) / speed) - System.nanoTime();
+			}
+			scheduler.schedule(this::send, Math.max(0, delay), TimeUnit.NANOSECONDS);
+		}
+
+		private synchronized void send() {
+			if (current != null) {
+				// the next flight is due before all responses to this one arrived
+				complete();
+			}
+			Flight flight = flights.get(next++);
+			current = flight;
+			responses.clear();
+			sentNanos = System.nanoTime();
+			for (byte[] recorded : flight.datagrams) {
+				byte[] datagram = cookie != null ? withCookie(recorded, cookie) : recorded;
+				try {
+					channel.write(ByteBuffer.wrap(datagram));
+					datagramsSent.incrementAndGet();
+					bytesSent.addAndGet(datagram.length);
+				} catch (IOException e) {
+					errors.incrementAndGet();
+				}
+			}
+			flightsSent.incrementAndGet();
+			if (speed > 0 && next < flights.size()) {
+				// the recorded timing is kept regardless of the responses
+				schedule();
+			}
+			if (flight.expected.isEmpty()) {
+				complete();
+			} else {
+				timeout = scheduler.schedule(() -> expire(flight), config.getLoadHandshakeTimeout(),
+						TimeUnit.MILLISECONDS);
+			}
+		}
+
+		private synchronized void receive(String signature, byte[] cookie, long now) {
+			if (cookie != null) {
+				this.cookie = cookie;
+			}
+			if (current == null) {
+				extraResponses.incrementAndGet();
+				return;
+			}
+			if (responses.isEmpty()) {
+				latencies.record(now - sentNanos, TimeUnit.NANOSECONDS);
+			}
+			responses.add(signature);
+			if (responses.size() >= current.expected.size()) {
+				complete();
+			}
+		}
+
+		private synchronized void expire(Flight flight) {
+			if (current == flight) {
+				complete();
+			}
+		}
+
+		private void complete() {
+			if (timeout != null) {
+				timeout.cancel(false);
+				timeout = null;
+			}
+			Flight flight = current;
+			current = null;
+			if (responses.isEmpty() && !flight.expected.isEmpty()) {
+				flightsUnanswered.incrementAndGet();
+			}
+			// datagrams may be reordered on their way, so only the signatures count
+			List<String> expected = new ArrayList<>(flight.expected);
+			List<String> actual = new ArrayList<>(responses);
+			Collections.sort(expected);
+			Collections.sort(actual);
+			if (!expected.equals(actual)) {
+				flightsDiverged.incrementAndGet();
+				if (!diverged) {
+					diverged = true;
+					peersDiverged.incrementAndGet();
+				}
+				firstDivergence.compareAndSet(null,
+						name + " flight " + flight.index + ": expected " + flight.expected + ", got " + responses);
+			}
+			if (flight.index == flights.size() - 1) {
+				done.countDown();
+			} else if (speed == 0) {
+				schedule();
+			}
+		}
+	}
+}
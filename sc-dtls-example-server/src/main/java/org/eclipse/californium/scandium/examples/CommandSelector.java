@@ -0,0 +1,354 @@
+package org.eclipse.californium.scandium.examples;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Serves the line based command protocol of the {@link ThreadStarter} to any
+ * number of learners from a single selector thread. Commands are executed on
+ * worker threads, one at a time and in order for each learner, so that a slow
+ * reset of one learner does not hold up the others. A command waiting for
+ * something completes later, without holding a worker thread meanwhile.
+ * Commands are either read as lines or, if so configured, as
+ * {@link CommandFrames}.
+ */
+public class CommandSelector {
+	private static final Logger LOG = LoggerFactory.getLogger(CommandSelector.class);
+	// lines are collected as they come in, frames need to fit into the buffer as a whole
+	private static final int LINE_BUFFER_SIZE = 1024;
+	private static final int FRAME_BUFFER_SIZE = CommandFrames.HEADER_LENGTH + CommandFrames.MAX_BODY_LENGTH;
+	// a learner sending a longer line is dropped, as one sending a longer frame
+	private static final int MAX_LINE_LENGTH = CommandFrames.MAX_BODY_LENGTH;
+
+	/**
+	 * Sends reply lines back to the learner.
+	 */
+	public interface Replier {
+		void reply(String line) throws IOException;
+	}
+
+	/**
+	 * The learner end of a command connection.
+	 */
+	public interface Connection {
+		/**
+		 * Executes a command, handing any reply lines to the given replier as
+		 * soon as they are known.
+		 *
+		 * @return completed once the command is done, the next command is only
+		 *         executed then
+		 */
+		CompletableFuture<Void> execute(String command, Replier replier) throws IOException;
+
+		/**
+		 * Called once the connection is served, with the replier by which
+		 * lines are pushed to the learner outside of any command. The replier
+		 * may be called from any thread.
+		 */
+		void attached(Replier pushed);
+
+		/**
+		 * @return {@code false} once no further commands should be executed
+		 */
+		boolean isActive();
+
+		/**
+		 * Called once the learner closed the connection.
+		 */
+		void disconnected() throws IOException;
+	}
+
+	public interface Acceptor {
+		/**
+		 * @return the connection serving the learner on the given socket, or
+		 *         {@code null} if the learner is to be turned away
+		 */
+		Connection accept(Socket socket) throws IOException;
+	}
+
+	private final ServerSocketChannel srvChannel;
+	private final Acceptor acceptor;
+	private final boolean framed;
+	private final Selector selector;
+	private final ExecutorService workers;
+	private final Queue<Channel> pendingWrites = new ConcurrentLinkedQueue<>();
+	private volatile boolean stopped;
+
+	public CommandSelector(ServerSocketChannel srvChannel, Acceptor acceptor, boolean framed) throws IOException {
+		this.srvChannel = srvChannel;
+		this.acceptor = acceptor;
+		this.framed = framed;
+		this.selector = Selector.open();
+		this.workers = Executors.newCachedThreadPool(r -> {
+			Thread thread = new Thread(r, "CommandWorker");
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	public void run() throws IOException {
+		srvChannel.configureBlocking(false);
+		srvChannel.register(selector, SelectionKey.OP_ACCEPT);
+		try {
+			while (!stopped && srvChannel.isOpen()) {
+				selector.select();
+				Channel channel;
+				while ((channel = pendingWrites.poll()) != null) {
+					if (channel.key.isValid()) {
+						channel.key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+					}
+				}
+				Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+				while (keys.hasNext()) {
+					SelectionKey key = keys.next();
+					keys.remove();
+					try {
+						if (!key.isValid()) {
+							continue;
+						}
+						if (key.isAcceptable()) {
+							accept();
+						} else {
+							channel = (Channel) key.attachment();
+							if (key.isReadable()) {
+								channel.read();
+							}
+							if (key.isValid() && key.isWritable()) {
+								channel.write();
+							}
+						}
+					} catch (ClosedChannelException e) {
+						key.cancel();
+					}
+				}
+			}
+		} finally {
+			stopped = true;
+			workers.shutdownNow();
+			selector.close();
+		}
+	}
+
+	/**
+	 * Makes the selector thread return from {@link #run()}.
+	 */
+	public void stop() {
+		stopped = true;
+		selector.wakeup();
+	}
+
+	private void accept() throws IOException {
+		SocketChannel socketChannel = srvChannel.accept();
+		if (socketChannel == null) {
+			return;
+		}
+		Connection connection = acceptor.accept(socketChannel.socket());
+		if (connection == null) {
+			// the channel is still blocking, so the reply is written at once
+			socketChannel.write(ByteBuffer.wrap(CommandFrames.busy(framed)));
+			socketChannel.close();
+			return;
+		}
+		socketChannel.configureBlocking(false);
+		SelectionKey key = socketChannel.register(selector, SelectionKey.OP_READ);
+		Channel channel = new Channel(socketChannel, key, connection);
+		key.attach(channel);
+		if (framed) {
+			connection.attached(line -> channel.send(CommandFrames.encode(CommandFrames.EVENT_ID, line)));
+		} else {
+			connection.attached(channel::reply);
+		}
+	}
+
+	/**
+	 * The selector's state for one learner.
+	 */
+	private class Channel {
+		private final SocketChannel socketChannel;
+		private final SelectionKey key;
+		private final Connection connection;
+		private final ByteBuffer in = ByteBuffer.allocate(framed ? FRAME_BUFFER_SIZE : LINE_BUFFER_SIZE);
+		private final StringBuilder line = new StringBuilder();
+		// guarded by this, as the queues are shared with the worker threads
+		private final Queue<CommandFrames.Frame> commands = new ArrayDeque<>();
+		private final Queue<ByteBuffer> replies = new ArrayDeque<>();
+		private boolean executing;
+		private boolean eof;
+
+		private Channel(SocketChannel socketChannel, SelectionKey key, Connection connection) {
+			this.socketChannel = socketChannel;
+			this.key = key;
+			this.connection = connection;
+		}
+
+		private void read() throws IOException {
+			try {
+				if (socketChannel.read(in) < 0) {
+					throw new EOFException();
+				}
+				in.flip();
+				if (framed) {
+					CommandFrames.Frame frame;
+					while ((frame = CommandFrames.decode(in)) != null) {
+						synchronized (this) {
+							commands.add(frame);
+						}
+					}
+					in.compact();
+				} else {
+					while (in.hasRemaining()) {
+						char c = (char) (in.get() & 0xff);
+						if (c == '\n') {
+							synchronized (this) {
+								commands.add(new CommandFrames.Frame(0, line.toString()));
+							}
+							line.setLength(0);
+						} else if (c != '\r') {
+							if (line.length() == MAX_LINE_LENGTH) {
+								throw new IOException("Line exceeds " + MAX_LINE_LENGTH + " characters");
+							}
+							line.append(c);
+						}
+					}
+					in.clear();
+				}
+			} catch (IOException e) {
+				if (!(e instanceof EOFException)) {
+					LOG.warn("Dropping learner connection", e);
+				}
+				key.cancel();
+				synchronized (this) {
+					eof = true;
+				}
+			}
+			schedule();
+		}
+
+		private void write() throws IOException {
+			synchronized (this) {
+				ByteBuffer reply;
+				while ((reply = replies.peek()) != null) {
+					socketChannel.write(reply);
+					if (reply.hasRemaining()) {
+						return;
+					}
+					replies.poll();
+				}
+				key.interestOps(SelectionKey.OP_READ);
+			}
+		}
+
+		private void reply(String line) {
+			send((line + "\n").getBytes(StandardCharsets.US_ASCII));
+		}
+
+		private void send(byte[] bytes) {
+			synchronized (this) {
+				replies.add(ByteBuffer.wrap(bytes));
+			}
+			pendingWrites.add(this);
+			selector.wakeup();
+		}
+
+		private synchronized void schedule() {
+			if (!executing && (!commands.isEmpty() || eof)) {
+				executing = true;
+				workers.execute(this::execute);
+			}
+		}
+
+		private void execute() {
+			try {
+				while (true) {
+					CommandFrames.Frame command;
+					boolean disconnected = false;
+					synchronized (this) {
+						command = commands.poll();
+						if (command == null) {
+							disconnected = eof;
+							eof = false;
+							if (!disconnected) {
+								executing = false;
+								return;
+							}
+						}
+					}
+					if (disconnected) {
+						connection.disconnected();
+						continue;
+					}
+					if (!connection.isActive()) {
+						continue;
+					}
+					if (framed && command.getId() == CommandFrames.EVENT_ID) {
+						send(CommandFrames.reservedId());
+						continue;
+					}
+					CommandFrames.Replier replier = framed ? new CommandFrames.Replier(command.getId(), this::send)
+							: null;
+					CompletableFuture<Void> done = connection.execute(command.getCommand(),
+							framed ? replier : this::reply);
+					if (!done.isDone()) {
+						// the worker is released, the commands go on once this one is done
+						done.whenComplete((result, error) -> {
+							if (error != null) {
+								failed(error);
+								return;
+							}
+							try {
+								completed(replier);
+							} catch (IOException e) {
+								failed(e);
+								return;
+							}
+							workers.execute(this::execute);
+						});
+						return;
+					}
+					done.join();
+					completed(replier);
+				}
+			} catch (IOException | RuntimeException e) {
+				failed(e);
+			}
+		}
+
+		/**
+		 * @param replier the replier of the completed command in framed mode,
+		 *            {@code null} for lines
+		 */
+		private void completed(CommandFrames.Replier replier) throws IOException {
+			if (replier != null && connection.isActive()) {
+				replier.complete();
+			}
+			if (!connection.isActive()) {
+				key.cancel();
+			}
+		}
+
+		private void failed(Throwable error) {
+			LOG.error("Could not serve learner", error);
+			synchronized (this) {
+				executing = false;
+			}
+		}
+	}
+}
@@ -0,0 +1,36 @@
+package org.eclipse.californium.scandium.examples;
+
+public enum ConnectionEviction {
+	/**
+	 * A full connection store evicts the least recently used connection if it
+	 * has been idle for the stale connection threshold, otherwise new peers
+	 * are rejected.
+	 */
+	STALE,
+
+	/**
+	 * A full connection store always evicts the least recently used
+	 * connection, however recently it was used.
+	 */
+	LRU,
+
+	/**
+	 * A full connection store rejects new peers until connections are closed.
+	 */
+	NONE;
+
+	/**
+	 * @return the stale connection threshold in seconds implementing this
+	 *         policy
+	 */
+	public long staleThreshold(long configuredSeconds) {
+		switch (this) {
+		case LRU:
+			return 0;
+		case NONE:
+			return Long.MAX_VALUE / 1000000000L;
+		default:
+			return configuredSeconds;
+		}
+	}
+}
@@ -0,0 +1,19 @@
+package org.eclipse.californium.scandium.examples;
+
+public enum ConnectorExecutor {
+	/**
+	 * The connector creates its own pool of connection threads.
+	 */
+	INTERNAL,
+	
+	/**
+	 * A fixed pool of connection threads is injected into the connector.
+	 */
+	FIXED,
+	
+	/**
+	 * A virtual thread per task is injected into the connector. Needs Java 21 or later,
+	 * on older JVMs the connector falls back to its own pool.
+	 */
+	VIRTUAL
+}
@@ -0,0 +1,123 @@
+package org.eclipse.californium.scandium.examples;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.security.PrivateKey;
+import java.security.cert.Certificate;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Caches key material parsed from JKS stores, so that the (slow) store parsing
+ * and password-based key decryption happen once per JVM rather than once per
+ * server instance. Entries are keyed by store location, alias and password.
+ */
+public final class CredentialsCache {
+
+	/**
+	 * Opens the store at a given location.
+	 */
+	public interface StoreSource {
+		InputStream open() throws IOException;
+	}
+
+	/**
+	 * A private key along with its certificate chain.
+	 */
+	public static final class Identity {
+		private final PrivateKey privateKey;
+		private final Certificate[] certificateChain;
+
+		private Identity(PrivateKey privateKey, Certificate[] certificateChain) {
+			this.privateKey = privateKey;
+			this.certificateChain = certificateChain;
+		}
+
+		public PrivateKey getPrivateKey() {
+			return privateKey;
+		}
+
+		public Certificate[] getCertificateChain() {
+			return certificateChain.clone();
+		}
+	}
+
+	private static final class Entry<T> {
+		private final T value;
+		private final long lastModified;
+
+		private Entry(T value, long lastModified) {
+			this.value = value;
+			this.lastModified = lastModified;
+		}
+	}
+
+	private static final Map<List<String>, Entry<Identity>> IDENTITIES = new ConcurrentHashMap<>();
+	private static final Map<List<String>, Entry<Certificate[]>> TRUSTED = new ConcurrentHashMap<>();
+
+	private CredentialsCache() {
+	}
+
+	/**
+	 * Returns the identity stored under the given alias.
+	 *
+	 * @param location the file location of the key store, or {@code null} for
+	 *                 the bundled store
+	 * @param source opens the key store if it has to be (re)loaded
+	 * @param detectChanges whether to reload the identity if the store file
+	 *                      changed since it was cached
+	 */
+	public static Identity getIdentity(String location, StoreSource source, String alias, String password,
+			boolean detectChanges) throws GeneralSecurityException, IOException {
+		List<String> key = Arrays.asList(location, alias, password);
+		Entry<Identity> entry = IDENTITIES.get(key);
+		long lastModified = lastModified(location);
+		if (entry == null || (detectChanges && entry.lastModified != lastModified)) {
+			KeyStore keyStore = load(source, password);
+			Identity identity = new Identity((PrivateKey) keyStore.getKey(alias, password.toCharArray()),
+					keyStore.getCertificateChain(alias));
+			entry = new Entry<>(identity, lastModified);
+			IDENTITIES.put(key, entry);
+		}
+		return entry.value;
+	}
+
+	/**
+	 * Returns the trusted certificates stored under the given alias.
+	 *
+	 * @see #getIdentity(String, StoreSource, String, String, boolean)
+	 */
+	public static Certificate[] getTrustedCertificates(String location, StoreSource source, String alias,
+			String password, boolean detectChanges) throws GeneralSecurityException, IOException {
+		List<String> key = Arrays.asList(location, alias, password);
+		Entry<Certificate[]> entry = TRUSTED.get(key);
+		long lastModified = lastModified(location);
+		if (entry == null || (detectChanges && entry.lastModified != lastModified)) {
+			KeyStore trustStore = load(source, password);
+			// You can load multiple certificates if needed
+			Certificate[] trustedCertificates = new Certificate[1];
+			trustedCertificates[0] = trustStore.getCertificate(alias);
+			entry = new Entry<>(trustedCertificates, lastModified);
+			TRUSTED.put(key, entry);
+		}
+		return entry.value.clone();
+	}
+
+	private static KeyStore load(StoreSource source, String password) throws GeneralSecurityException, IOException {
+		KeyStore store = KeyStore.getInstance("JKS");
+		try (InputStream in = source.open()) {
+			store.load(in, password.toCharArray());
+		}
+		return store;
+	}
+
+	private static long lastModified(String location) {
+		// bundled stores never change
+		return location == null ? 0L : new File(location).lastModified();
+	}
+}
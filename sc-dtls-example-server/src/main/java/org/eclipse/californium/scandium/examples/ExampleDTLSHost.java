@@ -0,0 +1,162 @@
+package org.eclipse.californium.scandium.examples;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.beust.jcommander.JCommander;
+import com.beust.jcommander.ParameterException;
+
+/**
+ * Runs many differently configured servers in a single process. They share
+ * their connection threads and, through {@link CredentialsCache} and
+ * {@link FilePskStore#shared(String, boolean)}, the parsed key material of
+ * equal key stores and PSK files.
+ *
+ * The endpoints are read from a file holding one endpoint per line, a name
+ * followed by the server's command line options. Empty lines and lines
+ * starting with {@code #} are skipped.
+ *
+ * <pre>
+ * psk   -port 5684 -cipherSuites TLS_PSK_WITH_AES_128_CBC_SHA256
+ * ecdhe -port 5685 -cipherSuites TLS_ECDHE_ECDSA_WITH_AES_128_CBC_SHA256 -clientAuth NEEDED
+ * </pre>
+ *
+ * An endpoint failing to start does not keep the others from running, it is
+ * reported as failed along with the cause.
+ */
+public class ExampleDTLSHost {
+	private static final Logger LOG = LoggerFactory.getLogger(ExampleDTLSHost.class);
+
+	private final List<Endpoint> endpoints;
+	private final ExecutorService executor;
+
+	public ExampleDTLSHost(List<Endpoint> endpoints, ExecutorService executor) {
+		this.endpoints = endpoints;
+		this.executor = executor;
+	}
+
+	/**
+	 * @return the endpoints described by the given file
+	 * @throws ParameterException if a line holds invalid options
+	 */
+	public static List<Endpoint> read(Path file) throws IOException {
+		List<Endpoint> endpoints = new ArrayList<>();
+		try (BufferedReader in = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+			String line;
+			int number = 0;
+			while ((line = in.readLine()) != null) {
+				number++;
+				line = line.trim();
+				if (line.isEmpty() || line.startsWith("#")) {
+					continue;
+				}
+				String[] words = line.split("\\s+");
+				ExampleDTLSServerConfig config = new ExampleDTLSServerConfig();
+				try {
+					new JCommander(config).parse(Arrays.copyOfRange(words, 1, words.length));
+				} catch (ParameterException e) {
+					throw new ParameterException(file + ":" + number + ": " + e.getMessage());
+				}
+				if (config.getStarterAddress() != null || config.getHostFile() != null) {
+					throw new ParameterException(file + ":" + number + ": endpoints can't use a thread starter or host file");
+				}
+				endpoints.add(new Endpoint(words[0], config));
+			}
+		}
+		return endpoints;
+	}
+
+	/**
+	 * Starts all endpoints, those failing to start are left stopped.
+	 */
+	public void start() {
+		for (Endpoint endpoint : endpoints) {
+			try {
+				endpoint.server = new ExampleDTLSServer(endpoint.config, executor);
+				endpoint.server.startServer();
+			} catch (RuntimeException e) {
+				endpoint.error = e.getCause() != null ? e.getCause() : e;
+				LOG.error("Endpoint {} failed to start", endpoint.name, endpoint.error);
+			}
+		}
+	}
+
+	public void stop() {
+		for (Endpoint endpoint : endpoints) {
+			if (endpoint.server != null && endpoint.error == null) {
+				endpoint.server.stopServer();
+			}
+		}
+	}
+
+	/**
+	 * @return a line per endpoint with its name, state, address, connections
+	 *         and configuration
+	 */
+	public String status() {
+		StringBuilder status = new StringBuilder();
+		for (Endpoint endpoint : endpoints) {
+			status.append(endpoint.status()).append(System.lineSeparator());
+		}
+		return status.toString();
+	}
+
+	/**
+	 * Runs the endpoints until the process is interrupted, logging their
+	 * status at the given interval.
+	 */
+	public void run(long statusIntervalMillis) {
+		start();
+		try {
+			while (true) {
+				LOG.info("Endpoint status:{}{}", System.lineSeparator(), status());
+				Thread.sleep(statusIntervalMillis);
+			}
+		} catch (InterruptedException e) {
+			stop();
+		}
+	}
+
+	public static class Endpoint {
+		private final String name;
+		private final ExampleDTLSServerConfig config;
+		private volatile ExampleDTLSServer server;
+		private volatile Throwable error;
+
+		public Endpoint(String name, ExampleDTLSServerConfig config) {
+			this.name = name;
+			this.config = config;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		private String status() {
+			String state;
+			if (error != null) {
+				state = "FAILED " + error;
+			} else if (server == null) {
+				state = "NEW";
+			} else if (server.isRunning()) {
+				state = "RUNNING " + server.getAddress() + " connections=" + server.getConnectionCount() + "/"
+						+ server.getConnectionCapacity();
+			} else {
+				state = "STOPPED";
+			}
+			return String.format(Locale.ROOT, "%s %s cipherSuites=%s clientAuth=%s", name, state,
+					config.getCipherSuites(), config.getClientAuth());
+		}
+	}
+}
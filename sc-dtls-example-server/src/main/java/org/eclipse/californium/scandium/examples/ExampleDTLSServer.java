@@ -18,13 +18,20 @@
 package org.eclipse.californium.scandium.examples;
 
 import java.io.IOException;
-import java.io.InputStream;
+import java.net.DatagramSocket;
 import java.net.InetSocketAddress;
 import java.net.SocketException;
 import java.security.GeneralSecurityException;
-import java.security.KeyStore;
-import java.security.PrivateKey;
+import java.nio.file.Paths;
 import java.security.cert.Certificate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
 
 import org.eclipse.californium.elements.Connector;
 import org.eclipse.californium.elements.EndpointContext;
@@ -34,6 +41,7 @@ import org.eclipse.californium.elements.RawDataChannel;
 import org.eclipse.californium.scandium.DTLSConnector;
 import org.eclipse.californium.scandium.config.DtlsConnectorConfig;
 import org.eclipse.californium.scandium.dtls.CertificateType;
+import org.eclipse.californium.scandium.dtls.InMemoryConnectionStore;
 import org.eclipse.californium.scandium.dtls.cipher.CipherSuite.CertificateKeyAlgorithm;
 import org.eclipse.californium.scandium.dtls.pskstore.InMemoryPskStore;
 import org.slf4j.Logger;
@@ -48,11 +56,38 @@ import com.beust.jcommander.ParameterException;
 public class ExampleDTLSServer extends Thread {
 
 	private static final Logger LOG = LoggerFactory.getLogger(ExampleDTLSServer.class.getName());
+	// heap taken by an established PSK connection, measured on a server holding 4000 of them
+	private static final long ESTIMATED_CONNECTION_BYTES = 2048;
 
+	// the first shard, which is the only one unless -shards is given
 	private DTLSConnector dtlsConnector;
+	private final List<MeteredDTLSConnector> shards = new ArrayList<>();
+	private final List<InMemoryConnectionStore> connectionStores = new ArrayList<>();
+	// the address the shards bind to
+	private InetSocketAddress bindAddress;
+	private int connectionCapacity;
 	private Operation operation;
+	// the executor created for this server, if any
+	private ExecutorService ownExecutor;
+	// the executor the connectors run on, counting this server's tasks, null for their own pools
+	private ExecutorService executor;
+	// the cache of established sessions, if enabled
+	private ExampleSessionCache sessionCache;
+	// completed once the connector is bound, respectively destroyed
+	private final CompletableFuture<InetSocketAddress> started = new CompletableFuture<>();
+	private final CompletableFuture<Void> stopped = new CompletableFuture<>();
+	private volatile ConnectorEvents.Listener eventListener;
 
 	public ExampleDTLSServer(ExampleDTLSServerConfig config) {
+		this(config, null);
+	}
+
+	/**
+	 * Creates a server whose connector runs on the given executor, which is
+	 * left to the caller to shut down. If {@code null} is given, the executor
+	 * configured by {@code -executor} is used.
+	 */
+	public ExampleDTLSServer(ExampleDTLSServerConfig config, ExecutorService executor) {
 		operation = config.getOperation();
 
 		try {
@@ -63,7 +98,9 @@ public class ExampleDTLSServer extends Thread {
 			builder.setRecommendedCipherSuitesOnly(false);
 			builder.setSupportedCipherSuites(config.getCipherSuites());
 
-			if (config.getCipherSuites().stream().anyMatch(cs -> cs.isPskBased())) {
+			if (config.getCipherSuites().stream().anyMatch(cs -> cs.isPskBased()) && config.getPskFile() != null) {
+				setFilePskStore(builder, config);
+			} else if (config.getCipherSuites().stream().anyMatch(cs -> cs.isPskBased())) {
 				InMemoryPskStore pskStore = new InMemoryPskStore();
 				// put in the PSK store the default identity/psk for tinydtls tests
 				pskStore.setKey(config.getPskIdentity(), config.getPskKey());
@@ -71,23 +108,15 @@ public class ExampleDTLSServer extends Thread {
 			}
 			if (config.getCipherSuites().stream()
 					.anyMatch(cs -> !cs.getCertificateKeyAlgorithm().equals(CertificateKeyAlgorithm.NONE))) {
-				// load the trust store
-				KeyStore trustStore = KeyStore.getInstance("JKS");
-				InputStream inTrust = config.getTrustInputStream();
-				trustStore.load(inTrust, config.getTrustPassword().toCharArray());
-
-				// load the key store
-				KeyStore keyStore = KeyStore.getInstance("JKS");
-				InputStream inKey = config.getKeyInputStream();
-				keyStore.load(inKey, config.getKeyPassword().toCharArray());
-
-				builder.setIdentity(
-						(PrivateKey) keyStore.getKey(config.getKeyAlias(), config.getKeyPassword().toCharArray()),
-						keyStore.getCertificateChain(config.getKeyAlias()), CertificateType.X_509);
-
-				// You can load multiple certificates if needed
-				Certificate[] trustedCertificates = new Certificate[1];
-				trustedCertificates[0] = trustStore.getCertificate(config.getTrustAlias());
+				// parsed key material is shared by all instances within the JVM
+				CredentialsCache.Identity identity = CredentialsCache.getIdentity(config.getKeyLocation(),
+						config::getKeyInputStream, config.getKeyAlias(), config.getKeyPassword(),
+						config.isReloadCredentials());
+				builder.setIdentity(identity.getPrivateKey(), identity.getCertificateChain(), CertificateType.X_509);
+
+				Certificate[] trustedCertificates = CredentialsCache.getTrustedCertificates(config.getTrustLocation(),
+						config::getTrustInputStream, config.getTrustAlias(), config.getTrustPassword(),
+						config.isReloadCredentials());
 				builder.setTrustStore(trustedCertificates);
 			}
 
@@ -96,10 +125,23 @@ public class ExampleDTLSServer extends Thread {
 			}
 
 			builder.setRetransmissionTimeout(config.getTimeout());
-			builder.setMaxConnections(config.getMaxConnections());
+			int shardCount = Math.max(1, config.getShards());
+			// the kernel spreads peers evenly, so each shard gets its share of the capacity
+			int capacity = (connectionCapacity(config) + shardCount - 1) / shardCount;
+			builder.setMaxConnections(capacity);
+			if (config.getSocketReceiveBuffer() != null) {
+				builder.setSocketReceiveBufferSize(config.getSocketReceiveBuffer());
+			}
+			if (config.getSocketSendBuffer() != null) {
+				builder.setSocketSendBufferSize(config.getSocketSendBuffer());
+			}
 
-			builder.setReceiverThreadCount(2);
-			builder.setConnectionThreadCount(1);
+			Integer receiverThreads = config.getReceiverThreads();
+			if (receiverThreads == null && shardCount > 1) {
+				// each shard has a socket of its own to receive from
+				receiverThreads = 1;
+			}
+			ThreadModel.configure(builder, receiverThreads, config.getConnectionThreads());
 
 			switch (config.getClientAuth()) {
 			case NEEDED:
@@ -113,38 +155,197 @@ public class ExampleDTLSServer extends Thread {
 				builder.setClientAuthenticationRequired(false);
 				builder.setClientAuthenticationWanted(false);
 			}
-			dtlsConnector = new DTLSConnector(builder.build());
-			dtlsConnector.setRawDataReceiver(new RawDataChannelImpl(dtlsConnector));
+			if (config.getSessionCacheSize() > 0) {
+				sessionCache = new ExampleSessionCache(config.getSessionCacheSize(), config.getSessionCacheExpiry(),
+						config.getSessionCacheEviction());
+			}
+			DtlsConnectorConfig connectorConfig = builder.build();
+			bindAddress = connectorConfig.getAddress();
+			if (executor == null) {
+				ConnectorExecutor executorType = config.getExecutor();
+				if (executorType == ConnectorExecutor.INTERNAL && shardCount > 1) {
+					// the shards share their connection threads, instead of each having a pool sized to the machine
+					executorType = ConnectorExecutor.FIXED;
+				}
+				executor = ownExecutor = ThreadModel.createExecutor(executorType, config.getConnectionThreads());
+			}
+			// the executor may be shared with other servers, whose tasks don't keep this one busy
+			executor = this.executor = ThreadModel.track(executor);
+			for (int shard = 0; shard < shardCount; shard++) {
+				// built here, as the connector configuration does not take stale thresholds below a second
+				InMemoryConnectionStore connectionStore = new InMemoryConnectionStore(capacity,
+						config.getConnectionEviction().staleThreshold(config.getStaleConnectionThreshold()),
+						sessionCache);
+				connectionStore.setTag(connectorConfig.getLoggingTag());
+				connectionStores.add(connectionStore);
+				connectionCapacity += capacity;
+				MeteredDTLSConnector connector;
+				if (shardCount == 1) {
+					connector = new MeteredDTLSConnector(connectorConfig, connectionStore);
+				} else {
+					connector = new ShardDTLSConnector(connectorConfig, connectionStore, shard, dtlsConnector);
+				}
+				// learners may ask a thread starter whether the server is quiescent
+				connector.setMessageTracking(config.getStarterAddress() != null);
+				// echoes are sent by the shard holding the peer's connection
+				connector.setRawDataReceiver(new RawDataChannelImpl(connector, config.getLogSampling()));
+				if (executor != null) {
+					connector.setExecutor(executor);
+				}
+				if (dtlsConnector == null) {
+					dtlsConnector = connector;
+				}
+				shards.add(connector);
+			}
 		} catch (GeneralSecurityException | IOException e) {
 			LOG.error("Could not load the keystore", e);
 		}
 
 	}
 
+	/**
+	 * @return the configured maximum number of connections, lowered to what
+	 *         fits into the connection memory budget, if there is one
+	 */
+	static int connectionCapacity(ExampleDTLSServerConfig config) {
+		int capacity = config.getMaxConnections();
+		if (config.getConnectionMemoryBudget() != null) {
+			long fitting = config.getConnectionMemoryBudget() * 1024L * 1024L / ESTIMATED_CONNECTION_BYTES;
+			if (fitting < capacity) {
+				LOG.info("Connection memory budget of {} MB limits the connections to {}",
+						config.getConnectionMemoryBudget(), fitting);
+				capacity = (int) Math.max(1, fitting);
+			}
+		}
+		return capacity;
+	}
+
 	public void startServer() {
+		if (dtlsConnector == null) {
+			throw new IllegalStateException("DTLS example server is not configured, see the log for the cause");
+		}
 		try {
-			dtlsConnector.start();
-			LOG.info("DTLS example server started");
+			if (shards.size() > 1 && bindAddress.getPort() != 0) {
+				checkPortAvailable();
+			}
+			for (DTLSConnector shard : shards) {
+				shard.start();
+			}
+			started.complete(dtlsConnector.getAddress());
+			LOG.info("DTLS example server started with {} shard(s)", shards.size());
 		} catch (IOException e) {
+			started.completeExceptionally(e);
+			// shards started already would keep the port, the host doesn't stop a server failing to start
+			stopServer();
 			throw new IllegalStateException("Unexpected error starting the DTLS UDP server", e);
 		}
 	}
 
+	/**
+	 * With SO_REUSEPORT the shards would share a fixed port with any other
+	 * server using it as well, so it is first bound once without the option.
+	 */
+	private void checkPortAvailable() throws IOException {
+		try {
+			new DatagramSocket(bindAddress).close();
+		} catch (SocketException e) {
+			throw new IOException("Port " + bindAddress.getPort() + " is not available", e);
+		}
+	}
+
 	public void stopServer() {
 		// we (hopefully) destroy any leftover state
-		dtlsConnector.destroy();
+		for (DTLSConnector shard : shards) {
+			shard.destroy();
+		}
+		if (ownExecutor != null) {
+			ownExecutor.shutdownNow();
+		}
+		ConnectorEvents.Listener listener = eventListener;
+		if (listener != null && stopped.complete(null)) {
+			listener.onEvent(ConnectorEvents.CLOSED);
+		}
+		stopped.complete(null);
 		LOG.info("DTLS example server stopped");
 	}
 
+	/**
+	 * Drops all connection and session state while keeping the connectors,
+	 * their sockets and their threads alive.
+	 */
+	public void softResetServer() {
+		for (DTLSConnector shard : shards) {
+			shard.clearConnectionState();
+		}
+		if (sessionCache != null) {
+			sessionCache.clear();
+		}
+		LOG.info("DTLS example server state cleared");
+	}
+
 	public void run() {
 		startServer();
 		try {
-			for (;;) {
-				Thread.sleep(10);
-			}
+			// runs until the server stops by itself or the thread is interrupted
+			stopped.get();
 		} catch (InterruptedException e) {
 			stopServer();
+		} catch (ExecutionException e) {
+			// stopped is never completed exceptionally
+		}
+	}
+
+	/**
+	 * @return a future completed with the bound address once the server has started
+	 */
+	public Future<InetSocketAddress> getStartFuture() {
+		return started;
+	}
+
+	/**
+	 * @return a future completed once the server's connector has been destroyed
+	 */
+	public Future<Void> getStopFuture() {
+		return stopped;
+	}
+
+	/**
+	 * Sets the listener the handshakes, alerts, echoes and the end of this
+	 * server are reported to, or {@code null} to stop reporting them.
+	 */
+	public void setEventListener(ConnectorEvents.Listener listener) {
+		eventListener = listener;
+		for (MeteredDTLSConnector shard : shards) {
+			shard.setEventListener(listener);
+		}
+	}
+
+	/**
+	 * @return {@code true} if no shard has anything left to send, see
+	 *         {@link MeteredDTLSConnector#isQuiescent(long, long)}, and none
+	 *         of their tasks is pending on the executor
+	 */
+	public boolean isQuiescent(long quietNanos, long deadlineNanos) {
+		if (!ThreadModel.isIdle(executor)) {
+			return false;
+		}
+		for (MeteredDTLSConnector shard : shards) {
+			if (!shard.isQuiescent(quietNanos, deadlineNanos)) {
+				return false;
+			}
 		}
+		return true;
+	}
+
+	/**
+	 * @return the number of datagrams the shards sent
+	 */
+	public long getDatagramsSent() {
+		long sent = 0;
+		for (MeteredDTLSConnector shard : shards) {
+			sent += shard.getDatagramsSent();
+		}
+		return sent;
 	}
 
 	public boolean isRunning() {
@@ -155,20 +356,35 @@ public class ExampleDTLSServer extends Thread {
 		return dtlsConnector.getAddress();
 	}
 
+	/**
+	 * @return the number of connections held by all shards
+	 */
+	public int getConnectionCount() {
+		int count = 0;
+		for (InMemoryConnectionStore connectionStore : connectionStores) {
+			count += connectionStore.remainingCapacity();
+		}
+		return connectionCapacity - count;
+	}
+
+	public int getConnectionCapacity() {
+		return connectionCapacity;
+	}
+
 	private class RawDataChannelImpl implements RawDataChannel {
 
 		private Connector connector;
+		// carries no per message state, so a single instance serves all echoes
+		private MessageCallback echoCallback;
+		private int logSampling;
+		private AtomicLong received = new AtomicLong();
+		private LongAdder echoed = Metrics.registry().counter(Metrics.RECORDS_ECHOED);
 
-		public RawDataChannelImpl(Connector con) {
+		public RawDataChannelImpl(Connector con, int logSampling) {
 			this.connector = con;
-		}
-
-		@Override
-		public void receiveData(final RawData raw) {
-			LOG.info("Received message: {}", new String(raw.getBytes()));
-			MessageCallback callback = null;
+			this.logSampling = Math.max(1, logSampling);
 			if (operation == Operation.ONE_ECHO) {
-				callback = new MessageCallback() {
+				echoCallback = new MessageCallback() {
 					@Override
 					public void onSent() {
 						stopServer();
@@ -192,20 +408,41 @@ public class ExampleDTLSServer extends Thread {
 					}
 				};
 			}
-			RawData data = RawData.outbound(raw.getBytes(), raw.getEndpointContext(), callback, false);
+		}
+
+		@Override
+		public void receiveData(final RawData raw) {
+			if (LOG.isInfoEnabled() && received.getAndIncrement() % logSampling == 0) {
+				LOG.info("Received message: {}", new String(raw.getBytes()));
+			}
 			if (operation == Operation.FULL || operation == Operation.ONE_ECHO) {
-				connector.send(data);
+				MessageCallback callback = echoCallback;
+				ConnectorEvents.Listener listener = eventListener;
+				if (listener != null) {
+					callback = ConnectorEvents.echoCallback(listener, raw.getInetSocketAddress(), raw.getSize(),
+							echoCallback);
+				}
+				// the payload array is handed on as it is, RawData does not copy it
+				connector.send(RawData.outbound(raw.getBytes(), raw.getEndpointContext(), callback, false));
+				echoed.increment();
 			}
 		}
 	}
 
+	// setPskStore is deprecated in favour of setAdvancedPskStore, but 2.6.2 still bridges a PskStore to it
+	@SuppressWarnings("deprecation")
+	private static void setFilePskStore(DtlsConnectorConfig.Builder builder, ExampleDTLSServerConfig config)
+			throws IOException {
+		builder.setPskStore(FilePskStore.shared(config.getPskFile(), config.isPskFileMapped()));
+	}
+
 	public static void main(String[] args) {
 		ExampleDTLSServerConfig config = new ExampleDTLSServerConfig();
 		JCommander commander = new JCommander(config);
 		try {
 			commander.parse(args);
 		} catch (ParameterException e) {
-			LOG.error("Could not parse provided parameters. ", e.getLocalizedMessage());
+			LOG.error("Could not parse provided parameters. {}", e.getLocalizedMessage());
 			commander.usage();
 			return;
 		}
@@ -215,13 +452,60 @@ public class ExampleDTLSServer extends Thread {
 			return;
 		}
 
+		if (config.getWorkers() > 0) {
+			if (config.getStarterAddress() == null) {
+				LOG.error("Workers are only supervised with a thread starter address");
+				return;
+			}
+			try {
+				// the workers record their own metrics and traces
+				new WorkerSupervisor(ExampleDTLSServer.class.getName(), args, config.getStarterAddress(), config.getWorkers(),
+						config.getWorkerCpus(), config.getWorkerMaxRss(), config.getWorkerCheckInterval(),
+						config.isStarterFramed()).run();
+			} catch (IOException | IllegalArgumentException e) {
+				LOG.error("Could not supervise the workers: {}", e.getLocalizedMessage());
+			}
+			return;
+		}
+
+		if (config.getStatsFile() != null) {
+			Metrics.registry().dumpPeriodically(config.getStatsFile(), config.getStatsInterval());
+		}
+
+		if (config.getTraceFile() != null) {
+			try {
+				DatagramRecorder.start(config.getTraceFile(),
+						Math.multiplyExact(config.getTraceFileSize(), 1024 * 1024), config.getTraceFiles(),
+						config.getTraceBuffer());
+			} catch (IOException e) {
+				LOG.error("Could not create the trace file", e);
+				return;
+			}
+		}
+
+		if (config.getHostFile() != null) {
+			try {
+				// all endpoints run on the connection threads configured on the command line
+				ExampleDTLSHost host = new ExampleDTLSHost(ExampleDTLSHost.read(Paths.get(config.getHostFile())),
+						ThreadModel.createSharedExecutor(config.getExecutor(), config.getConnectionThreads()));
+				host.run(config.getStatsInterval());
+			} catch (IOException | ParameterException e) {
+				LOG.error("Could not read the host file {}: {}", config.getHostFile(), e.getLocalizedMessage());
+			}
+			return;
+		}
+
 		final ExampleDTLSServer server = new ExampleDTLSServer(config);
 		if (config.getStarterAddress() == null) {
 			server.run();
 		} else {
 			try {
-				ThreadStarter ts = new ThreadStarter(() -> new ExampleDTLSServer(config), config.getStarterAddress(),
-						config.isContinuous());
+				// created once, so that resets neither start nor end connection and timer threads
+				ExecutorService sharedExecutor = ThreadModel.createSharedExecutor(config.getExecutor(),
+						config.getConnectionThreads());
+				ThreadStarter ts = new ThreadStarter(() -> new ExampleDTLSServer(config, sharedExecutor),
+						config.getStarterAddress(), config.isContinuous(), config.getPoolSize(),
+						config.getMaxSessions(), config.isStarterSelector(), config.isStarterFramed());
 				ts.run();
 			} catch (SocketException e) {
 				LOG.error(e.getLocalizedMessage());
@@ -3,6 +3,7 @@ package org.eclipse.californium.scandium.examples;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.InputStream;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 
@@ -41,12 +42,21 @@ public class ExampleDTLSServerConfig {
 	@Parameter(names = "-keyPassword", required = false, description = "The location with which the key store is protected")
 	private String keyPassword = DEFAULT_STORE_PASSWORD;
 
+	@Parameter(names = "-reloadCredentials", required = false, description = "Reload cached key material whenever the key or trust store file changes")
+	private boolean reloadCredentials = false;
+
 	@Parameter(names = "-pskKey", converter = HexStringToBytesConverter.class, required = false, description = "The password (in hex form without the prefix 0x) with which the trust store is protected")
 	private byte[] pskKey = new byte[] { 0x12, 0x34 };
 
 	@Parameter(names = "-pskIdentity", required = false, description = "The psk identity to use")
 	public String pskIdentity = "Client_identity";
 
+	@Parameter(names = "-pskFile", required = false, description = "A file of PSK identities and keys (see FilePskStore) used instead of -pskIdentity and -pskKey")
+	private String pskFile = null;
+
+	@Parameter(names = "-pskFileMapped", required = false, description = "Memory-map the PSK file instead of reading it into the heap")
+	private boolean pskFileMapped = false;
+
 	@Parameter(names = "-timeout", required = false, description = "The retransmission timeout for the Scandium DTLS implementation")
 	private Integer timeout = 20000;
 
@@ -60,18 +70,102 @@ public class ExampleDTLSServerConfig {
 	@Parameter(names = "-starterAddress", required = false, description = "Uses a thread starter listening at ip_address:port")
 	private String starterAddress = null;
 
+	@Parameter(names = "-hostFile", required = false, description = "Host the endpoints listed in this file, one per line as a name followed by its options, in a single process")
+	private String hostFile = null;
+
 	@Parameter(names = "-starterAck", required = false, description = "Configured the thread starter to acknowledge each reset")
 	private boolean starterAck = false;
 
 	@Parameter(names = "-continuous", required = false, description = "Do not stop thread starter after the learned closes the connection")
 	private boolean continuous = false;
 
+	@Parameter(names = "-poolSize", required = false, description = "The number of pre-started servers the thread starter keeps ready for resets (0 disables the pool)")
+	private Integer poolSize = 0;
+
+	@Parameter(names = "-maxSessions", required = false, description = "The maximum number of learners the thread starter serves concurrently, each with its own server")
+	private Integer maxSessions = 1;
+
+	@Parameter(names = "-starterSelector", required = false, description = "Serve all learners from a single selector thread instead of a blocking thread per learner")
+	private boolean starterSelector = false;
+
+	@Parameter(names = "-starterFramed", required = false, description = "Use the framed thread starter protocol, which tags commands with request ids so they can be pipelined")
+	private boolean starterFramed = false;
+
+	@Parameter(names = "-workers", required = false, description = "Supervise this many worker processes, each with its own thread starter, and relay the learners connecting to the starter address to them")
+	private Integer workers = 0;
+
+	@Parameter(names = "-workerCpus", required = false, variableArity = true, description = "The CPU set of each worker in taskset notation, as in 0-3 4-7 (defaults to splitting the available processors)")
+	private List<String> workerCpus = new ArrayList<>();
+
+	@Parameter(names = "-workerMaxRss", required = false, description = "Restart a worker once its resident memory exceeds this many MB (0 to not restart workers for their memory)")
+	private Long workerMaxRss = 0L;
+
+	@Parameter(names = "-workerCheckInterval", required = false, description = "Interval in ms at which the workers are checked")
+	private Long workerCheckInterval = 1000L;
+
+	@Parameter(names = "-logSampling", required = false, description = "Log only every n-th received message")
+	private Integer logSampling = 1;
+
+	@Parameter(names = "-statsFile", required = false, description = "Periodically append the metrics to this file")
+	private String statsFile = null;
+
+	@Parameter(names = "-statsInterval", required = false, description = "Interval in ms at which the metrics are appended to the stats file and hosted endpoints report their status")
+	private Integer statsInterval = 10000;
+
+	@Parameter(names = "-traceFile", required = false, description = "Record all datagrams to trace files <traceFile>.<n>.dtr (see DatagramRecorder)")
+	private String traceFile = null;
+
+	@Parameter(names = "-traceFileSize", required = false, validateWith = TraceFileSizeValidator.class, description = "The size in MB at which a new trace file is started, at most 2047")
+	private Integer traceFileSize = 64;
+
+	@Parameter(names = "-traceFiles", required = false, validateWith = PositiveIntegerValidator.class, description = "The number of most recent trace files kept")
+	private Integer traceFiles = 10;
+
+	@Parameter(names = "-traceBuffer", required = false, validateWith = PositiveIntegerValidator.class, description = "The number of datagrams buffered for the trace files, further ones are dropped")
+	private Integer traceBuffer = 65536;
+
+	@Parameter(names = "-receiverThreads", required = false, description = "The number of threads receiving datagrams (defaults to a quarter of the available processors)")
+	private Integer receiverThreads = null;
+
+	@Parameter(names = "-connectionThreads", required = false, description = "The number of threads processing records and handshakes (defaults to the available processors)")
+	private Integer connectionThreads = null;
+
+	@Parameter(names = "-executor", required = false, description = "The executor running the connection threads")
+	private ConnectorExecutor executor = ConnectorExecutor.INTERNAL;
+
+	@Parameter(names = "-sessionCacheSize", required = false, description = "The maximum number of sessions kept for resumption after their connection is gone (0 disables the cache)")
+	private Integer sessionCacheSize = 0;
+
+	@Parameter(names = "-sessionCacheExpiry", required = false, description = "The time in ms after which a cached session can no longer be resumed (0 for never)")
+	private Long sessionCacheExpiry = 0L;
+
+	@Parameter(names = "-sessionCacheEviction", required = false, description = "Which session a full session cache drops")
+	private SessionCacheEviction sessionCacheEviction = SessionCacheEviction.LRU;
+
+	@Parameter(names = "-shards", required = false, description = "The number of connectors sharing the port with SO_REUSEPORT, which spreads peers across them (Linux, Java 9 or later)")
+	private Integer shards = 1;
+
+	@Parameter(names = "-socketReceiveBuffer", required = false, description = "The receive buffer size of each socket in bytes (system default if not set)")
+	private Integer socketReceiveBuffer = null;
+
+	@Parameter(names = "-socketSendBuffer", required = false, description = "The send buffer size of each socket in bytes (system default if not set)")
+	private Integer socketSendBuffer = null;
+
 	@Parameter(names = "-clientAuth", required = false, description = "Defines the authentication method.")
 	private ClientAuth clientAuth = ClientAuth.DISABLED;
 
-	@Parameter(names = "-maxConnections", required = false, description = "The maximum number of connections.")
+	@Parameter(names = "-maxConnections", required = false, description = "The maximum number of connections, the capacity of the connection store.")
 	private Integer maxConnections = 1;
 
+	@Parameter(names = "-staleConnectionThreshold", required = false, description = "The time in s after which an idle connection may be evicted from a full connection store")
+	private Long staleConnectionThreshold = 30 * 60L;
+
+	@Parameter(names = "-connectionEviction", required = false, description = "Which connection a full connection store evicts for a new peer")
+	private ConnectionEviction connectionEviction = ConnectionEviction.STALE;
+
+	@Parameter(names = "-connectionMemoryBudget", required = false, description = "The heap in MB connections may take, which caps -maxConnections (unlimited if not set)")
+	private Integer connectionMemoryBudget = null;
+
 	@Parameter(names = "-operation", required = false, description = "The client's mode of operation.")
 	private Operation operation = Operation.FULL;
 
@@ -115,6 +209,10 @@ public class ExampleDTLSServerConfig {
 		return keyAlias;
 	}
 
+	public boolean isReloadCredentials() {
+		return reloadCredentials;
+	}
+
 	public Integer getTimeout() {
 		return timeout;
 	}
@@ -143,6 +241,10 @@ public class ExampleDTLSServerConfig {
 		return pskIdentity;
 	}
 
+	public String getHostFile() {
+		return hostFile;
+	}
+
 	public String getStarterAddress() {
 		return starterAddress;
 	}
@@ -155,10 +257,126 @@ public class ExampleDTLSServerConfig {
 		return continuous;
 	}
 
+	public Integer getPoolSize() {
+		return poolSize;
+	}
+
+	public Integer getMaxSessions() {
+		return maxSessions;
+	}
+
+	public boolean isStarterSelector() {
+		return starterSelector;
+	}
+
+	public boolean isStarterFramed() {
+		return starterFramed;
+	}
+
+	public Integer getWorkers() {
+		return workers;
+	}
+
+	public List<String> getWorkerCpus() {
+		return workerCpus;
+	}
+
+	public Long getWorkerMaxRss() {
+		return workerMaxRss;
+	}
+
+	public Long getWorkerCheckInterval() {
+		return workerCheckInterval;
+	}
+
+	public Integer getLogSampling() {
+		return logSampling;
+	}
+
+	public String getStatsFile() {
+		return statsFile;
+	}
+
+	public Integer getStatsInterval() {
+		return statsInterval;
+	}
+
+	public String getTraceFile() {
+		return traceFile;
+	}
+
+	public Integer getTraceFileSize() {
+		return traceFileSize;
+	}
+
+	public Integer getTraceFiles() {
+		return traceFiles;
+	}
+
+	public Integer getTraceBuffer() {
+		return traceBuffer;
+	}
+
+	public Integer getReceiverThreads() {
+		return receiverThreads;
+	}
+
+	public Integer getConnectionThreads() {
+		return connectionThreads;
+	}
+
+	public ConnectorExecutor getExecutor() {
+		return executor;
+	}
+
+	public String getPskFile() {
+		return pskFile;
+	}
+
+	public boolean isPskFileMapped() {
+		return pskFileMapped;
+	}
+
+	public Integer getSessionCacheSize() {
+		return sessionCacheSize;
+	}
+
+	public Long getSessionCacheExpiry() {
+		return sessionCacheExpiry;
+	}
+
+	public SessionCacheEviction getSessionCacheEviction() {
+		return sessionCacheEviction;
+	}
+
 	public Integer getMaxConnections() {
 		return maxConnections;
 	}
 
+	public Integer getShards() {
+		return shards;
+	}
+
+	public Integer getSocketReceiveBuffer() {
+		return socketReceiveBuffer;
+	}
+
+	public Integer getSocketSendBuffer() {
+		return socketSendBuffer;
+	}
+
+	public Long getStaleConnectionThreshold() {
+		return staleConnectionThreshold;
+	}
+
+	public ConnectionEviction getConnectionEviction() {
+		return connectionEviction;
+	}
+
+	public Integer getConnectionMemoryBudget() {
+		return connectionMemoryBudget;
+	}
+
 	public Operation getOperation() {
 		return operation;
 	}
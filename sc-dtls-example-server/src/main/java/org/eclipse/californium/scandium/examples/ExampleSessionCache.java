@@ -0,0 +1,85 @@
+package org.eclipse.californium.scandium.examples;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.californium.scandium.dtls.DTLSSession;
+import org.eclipse.californium.scandium.dtls.SessionCache;
+import org.eclipse.californium.scandium.dtls.SessionId;
+import org.eclipse.californium.scandium.dtls.SessionTicket;
+
+/**
+ * A bounded in-memory cache of the server's established sessions, so that
+ * clients can resume them with an abbreviated handshake even after their
+ * connection has been evicted from the connection store.
+ *
+ * Sessions expire a fixed time after they have been established, resuming
+ * one does not extend its lifetime.
+ */
+public class ExampleSessionCache implements SessionCache {
+	private final Map<SessionId, Entry> entries;
+	private final long expiryNanos;
+
+	/**
+	 * @param size the maximum number of cached sessions
+	 * @param expiryMillis the time after which a session can no longer be
+	 *            resumed, or 0 if sessions do not expire
+	 * @param eviction which session a full cache drops
+	 */
+	public ExampleSessionCache(final int size, long expiryMillis, SessionCacheEviction eviction) {
+		this.expiryNanos = TimeUnit.MILLISECONDS.toNanos(expiryMillis);
+		this.entries = new LinkedHashMap<SessionId, Entry>(16, 0.75f, eviction == SessionCacheEviction.LRU) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<SessionId, Entry> eldest) {
+				return size() > size;
+			}
+		};
+	}
+
+	@Override
+	public synchronized void put(DTLSSession session) {
+		SessionId id = session.getSessionIdentifier();
+		if (id != null && !id.isEmpty()) {
+			entries.put(id, new Entry(session.getSessionTicket(), System.nanoTime()));
+		}
+	}
+
+	@Override
+	public synchronized SessionTicket get(SessionId id) {
+		Entry entry = entries.get(id);
+		if (entry == null) {
+			return null;
+		}
+		if (expiryNanos > 0 && System.nanoTime() - entry.established > expiryNanos) {
+			entries.remove(id);
+			return null;
+		}
+		return entry.ticket;
+	}
+
+	@Override
+	public synchronized void remove(SessionId id) {
+		entries.remove(id);
+	}
+
+	public synchronized void clear() {
+		entries.clear();
+	}
+
+	public synchronized int size() {
+		return entries.size();
+	}
+
+	private static class Entry {
+		private final SessionTicket ticket;
+		private final long established;
+
+		private Entry(SessionTicket ticket, long established) {
+			this.ticket = ticket;
+			this.established = established;
+		}
+	}
+}
@@ -0,0 +1,353 @@
+package org.eclipse.californium.scandium.examples;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetSocketAddress;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.eclipse.californium.elements.EndpointContext;
+import org.eclipse.californium.elements.MessageCallback;
+import org.eclipse.californium.elements.RawData;
+import org.eclipse.californium.scandium.DTLSConnector;
+import org.eclipse.californium.scandium.config.DtlsConnectorConfig;
+import org.eclipse.californium.scandium.dtls.AlertMessage;
+import org.eclipse.californium.scandium.dtls.ContentType;
+import org.eclipse.californium.scandium.dtls.DTLSSession;
+import org.eclipse.californium.scandium.dtls.Handshaker;
+import org.eclipse.californium.scandium.dtls.InMemoryConnectionStore;
+import org.eclipse.californium.scandium.dtls.Record;
+import org.eclipse.californium.scandium.dtls.ResumingClientHandshaker;
+import org.eclipse.californium.scandium.dtls.ResumingServerHandshaker;
+import org.eclipse.californium.scandium.dtls.ResumptionSupportingConnectionStore;
+import org.eclipse.californium.scandium.dtls.SessionAdapter;
+import org.eclipse.californium.scandium.dtls.SessionId;
+
+/**
+ * A {@link DTLSConnector} reporting its handshakes, retransmitted flights and
+ * datagram bytes to the {@link Metrics} registry. Completed handshakes which
+ * resumed a session are additionally counted as abbreviated. If a
+ * {@link DatagramRecorder} is active, all datagrams are recorded.
+ *
+ * Handshakes and alerts are also reported to the {@link ConnectorEvents}
+ * listener, if one is set.
+ *
+ * The connector also tells whether it is quiescent, having nothing left to
+ * send until a given deadline. That is the case while no handshake is about to
+ * send its next flight, either as it is still preparing it or as its last
+ * flight is retransmitted before the deadline, no message is queued, no
+ * datagram is being processed and none came in or went out for a while. The
+ * records of a datagram are processed by the executor, which the owner of the
+ * connector has to check to be idle, too.
+ */
+public class MeteredDTLSConnector extends DTLSConnector {
+	private final LongAdder handshakesStarted;
+	private final LongAdder handshakesCompleted;
+	private final LongAdder handshakesFailed;
+	private final LongAdder handshakesAbbreviated;
+	private final LongAdder flightsRetransmitted;
+	private final LongAdder bytesIn;
+	private final LongAdder bytesOut;
+	private final LatencyHistogram handshakeLatency;
+	private final DatagramRecorder recorder = DatagramRecorder.active();
+	// getAddress() queries the socket, too costly for every recorded datagram
+	private volatile int localPort;
+	private volatile ConnectorEvents.Listener eventListener;
+	// handshakes not yet established by their peer's address, a flight is only told apart by its destination
+	private final Map<InetSocketAddress, PendingHandshake> pendingHandshakes = new ConcurrentHashMap<>();
+	private final AtomicInteger pendingMessages = new AtomicInteger();
+	// datagrams read but not yet handed to the executor
+	private final AtomicInteger pendingDatagrams = new AtomicInteger();
+	private final AtomicLong datagramsSent = new AtomicLong();
+	private volatile long lastDatagramNanos = System.nanoTime();
+	private volatile boolean messageTracking;
+
+	public MeteredDTLSConnector(DtlsConnectorConfig configuration) {
+		this(configuration, new InMemoryConnectionStore(configuration.getMaxConnections(),
+				configuration.getStaleConnectionThreshold()).setTag(configuration.getLoggingTag()));
+	}
+
+	/**
+	 * Creates a connector keeping its connections in the given store instead
+	 * of one set up from the configuration.
+	 */
+	public MeteredDTLSConnector(DtlsConnectorConfig configuration, ResumptionSupportingConnectionStore connectionStore) {
+		super(configuration, connectionStore);
+		Metrics metrics = Metrics.registry();
+		handshakesStarted = metrics.counter(Metrics.HANDSHAKES_STARTED);
+		handshakesCompleted = metrics.counter(Metrics.HANDSHAKES_COMPLETED);
+		handshakesFailed = metrics.counter(Metrics.HANDSHAKES_FAILED);
+		handshakesAbbreviated = metrics.counter(Metrics.HANDSHAKES_ABBREVIATED);
+		flightsRetransmitted = metrics.counter(Metrics.FLIGHTS_RETRANSMITTED);
+		bytesIn = metrics.counter(Metrics.BYTES_IN);
+		bytesOut = metrics.counter(Metrics.BYTES_OUT);
+		handshakeLatency = metrics.histogram(Metrics.HANDSHAKE_LATENCY);
+		setAlertHandler((peer, alert) -> {
+			ConnectorEvents.Listener listener = eventListener;
+			if (listener != null) {
+				listener.onEvent(ConnectorEvents.format(ConnectorEvents.ALERT_RECEIVED, peer, alert.getLevel(),
+						alert.getDescription()));
+			}
+		});
+	}
+
+	/**
+	 * Sets the listener the events of this connector are reported to, or
+	 * {@code null} to stop reporting them.
+	 */
+	public void setEventListener(ConnectorEvents.Listener listener) {
+		this.eventListener = listener;
+	}
+
+	/**
+	 * Enables counting the queued messages, which takes a callback per
+	 * message, so that they are considered by {@link #isQuiescent(long, long)}.
+	 */
+	public void setMessageTracking(boolean messageTracking) {
+		this.messageTracking = messageTracking;
+	}
+
+	/**
+	 * @param quietNanos the time for which no datagram may have come in or
+	 *            gone out, as they may still be processed
+	 * @param deadlineNanos the {@link System#nanoTime()} up to which the
+	 *            connector has to stay quiet, a handshake waiting for its
+	 *            peer only keeps it busy if its flight is retransmitted
+	 *            before
+	 * @return {@code true} if the connector has nothing left to send
+	 */
+	public boolean isQuiescent(long quietNanos, long deadlineNanos) {
+		if (pendingMessages.get() != 0 || pendingDatagrams.get() != 0
+				|| System.nanoTime() - lastDatagramNanos < quietNanos) {
+			return false;
+		}
+		// a handshaker replaced by a new one is not always reported as failed
+		pendingHandshakes.values()
+				.removeIf(pending -> pending.handshaker.isDestroyed() || pending.handshaker.isExpired());
+		for (PendingHandshake pending : pendingHandshakes.values()) {
+			if (pending.isRetransmittedBefore(deadlineNanos)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * @return the number of datagrams sent since the connector was created
+	 */
+	public long getDatagramsSent() {
+		return datagramsSent.get();
+	}
+
+	@Override
+	public void send(RawData message) {
+		if (messageTracking) {
+			pendingMessages.incrementAndGet();
+			message = RawData.outbound(message.getBytes(), message.getEndpointContext(), new PendingMessage(message),
+					message.isMulticast());
+		}
+		super.send(message);
+	}
+
+	@Override
+	protected void onInitializeHandshaker(Handshaker handshaker) {
+		super.onInitializeHandshaker(handshaker);
+		handshakesStarted.increment();
+		PendingHandshake pending = new PendingHandshake(handshaker);
+		pendingHandshakes.put(handshaker.getPeerAddress(), pending);
+		handshaker.addSessionListener(new HandshakeListener(handshaker, pending));
+	}
+
+	@Override
+	public void sendFlight(List<DatagramPacket> datagrams) throws IOException {
+		super.sendFlight(datagrams);
+		if (!datagrams.isEmpty()) {
+			PendingHandshake pending = pendingHandshakes.get(datagrams.get(0).getSocketAddress());
+			if (pending != null) {
+				pending.flightSent();
+			}
+		}
+	}
+
+	@Override
+	protected void init(InetSocketAddress bindAddress, DatagramSocket socket, Integer mtu) throws IOException {
+		super.init(bindAddress, socket, mtu);
+		localPort = socket.getLocalPort();
+	}
+
+	// deprecated in favour of the overload with the router, but still the one 2.6.2's receiver threads call
+	@SuppressWarnings("deprecation")
+	@Override
+	protected void processDatagram(DatagramPacket packet) {
+		bytesIn.add(packet.getLength());
+		pendingDatagrams.incrementAndGet();
+		try {
+			lastDatagramNanos = System.nanoTime();
+			if (recorder != null) {
+				recorder.record(DatagramRecorder.INBOUND, localPort, packet);
+			}
+			super.processDatagram(packet);
+		} finally {
+			pendingDatagrams.decrementAndGet();
+		}
+	}
+
+	@Override
+	protected void sendRecord(Record record) throws IOException {
+		super.sendRecord(record);
+		ConnectorEvents.Listener listener = eventListener;
+		// alerts are sent as single records, as are HELLO_VERIFY_REQUESTs and application data
+		if (listener != null && record.getType() == ContentType.ALERT && record.getFragment() instanceof AlertMessage) {
+			AlertMessage alert = (AlertMessage) record.getFragment();
+			listener.onEvent(ConnectorEvents.format(ConnectorEvents.ALERT_SENT, record.getPeerAddress(),
+					alert.getLevel(), alert.getDescription()));
+		}
+	}
+
+	@Override
+	protected void sendNextDatagramOverNetwork(DatagramPacket datagram) throws IOException {
+		sendDatagram(datagram);
+		bytesOut.add(datagram.getLength());
+		datagramsSent.incrementAndGet();
+		lastDatagramNanos = System.nanoTime();
+		if (recorder != null) {
+			recorder.record(DatagramRecorder.OUTBOUND, localPort, datagram);
+		}
+	}
+
+	/**
+	 * Sends a datagram, by default through the connector's socket. Connectors
+	 * whose datagrams are received by others than their own receiver threads
+	 * send them their own way, too.
+	 */
+	protected void sendDatagram(DatagramPacket datagram) throws IOException {
+		super.sendNextDatagramOverNetwork(datagram);
+	}
+
+	/**
+	 * A handshake not yet established, with the time its last flight went out.
+	 */
+	private class PendingHandshake {
+		private final Handshaker handshaker;
+		// the first retransmission timeout, later ones wait longer, so the handshake may be busy a little early
+		private final long timeoutNanos = TimeUnit.MILLISECONDS.toNanos(config.getRetransmissionTimeout());
+		private volatile long flightNanos;
+		private volatile boolean flightSent;
+
+		private PendingHandshake(Handshaker handshaker) {
+			this.handshaker = handshaker;
+		}
+
+		private void flightSent() {
+			flightNanos = System.nanoTime();
+			flightSent = true;
+		}
+
+		/**
+		 * @return {@code true} if the handshake's next flight is still to be
+		 *         sent, or its last one retransmitted before the deadline
+		 */
+		private boolean isRetransmittedBefore(long deadlineNanos) {
+			return !flightSent || flightNanos + timeoutNanos - deadlineNanos <= 0;
+		}
+	}
+
+	/**
+	 * Follows a single handshake, which counts as completed once its session is
+	 * established.
+	 */
+	private class HandshakeListener extends SessionAdapter {
+		private final long start = System.nanoTime();
+		private final PendingHandshake pending;
+		// the session offered for resumption, a client falls back to a full handshake if the server declines it
+		private final SessionId resumed;
+		private volatile boolean established;
+
+		private HandshakeListener(Handshaker handshaker, PendingHandshake pending) {
+			this.pending = pending;
+			if (handshaker instanceof ResumingClientHandshaker || handshaker instanceof ResumingServerHandshaker) {
+				resumed = handshaker.getSession().getSessionIdentifier();
+			} else {
+				resumed = null;
+			}
+		}
+
+		@Override
+		public void sessionEstablished(Handshaker handshaker, DTLSSession establishedSession) {
+			established = true;
+			pendingHandshakes.remove(handshaker.getPeerAddress(), pending);
+			handshakeLatency.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+			handshakesCompleted.increment();
+			if (resumed != null && resumed.equals(establishedSession.getSessionIdentifier())) {
+				handshakesAbbreviated.increment();
+			}
+			ConnectorEvents.Listener listener = eventListener;
+			if (listener != null) {
+				listener.onEvent(ConnectorEvents.format(ConnectorEvents.ESTABLISHED, handshaker.getPeerAddress()));
+			}
+		}
+
+		@Override
+		public void handshakeFailed(Handshaker handshaker, Throwable error) {
+			pendingHandshakes.remove(handshaker.getPeerAddress(), pending);
+			if (!established) {
+				handshakesFailed.increment();
+				ConnectorEvents.Listener listener = eventListener;
+				if (listener != null) {
+					listener.onEvent(ConnectorEvents.format(ConnectorEvents.FAILED, handshaker.getPeerAddress(),
+							error.getMessage()));
+				}
+			}
+		}
+
+		@Override
+		public void handshakeFlightRetransmitted(Handshaker handshaker, int flight) {
+			flightsRetransmitted.increment();
+		}
+	}
+
+	/**
+	 * Counts a message as queued until it is sent or dropped, handing the
+	 * outcome on to the message's own callback.
+	 */
+	private class PendingMessage implements MessageCallback {
+		private final RawData message;
+
+		private PendingMessage(RawData message) {
+			this.message = message;
+		}
+
+		@Override
+		public void onSent() {
+			pendingMessages.decrementAndGet();
+			message.onSent();
+		}
+
+		@Override
+		public void onError(Throwable error) {
+			pendingMessages.decrementAndGet();
+			message.onError(error);
+		}
+
+		@Override
+		public void onDtlsRetransmission(int flight) {
+			message.onDtlsRetransmission(flight);
+		}
+
+		@Override
+		public void onContextEstablished(EndpointContext context) {
+			message.onContextEstablished(context);
+		}
+
+		@Override
+		public void onConnecting() {
+			message.onConnecting();
+		}
+	}
+}
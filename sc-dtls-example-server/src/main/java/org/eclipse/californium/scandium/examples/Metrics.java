@@ -0,0 +1,108 @@
+package org.eclipse.californium.scandium.examples;
+
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The process wide registry of counters and latency histograms. Counters are
+ * {@link LongAdder}s, so connector threads updating them on every record do not
+ * contend with each other. Callers look their counters up once and keep them.
+ *
+ * The registry is rendered as a single line of {@code name=value} pairs, which
+ * is both the reply to the thread starter's "stats" command and what the
+ * periodic dump appends to its file.
+ */
+public final class Metrics {
+	private static final Logger LOG = LoggerFactory.getLogger(Metrics.class);
+
+	public static final String HANDSHAKES_STARTED = "handshakes.started";
+	public static final String HANDSHAKES_COMPLETED = "handshakes.completed";
+	public static final String HANDSHAKES_FAILED = "handshakes.failed";
+	public static final String HANDSHAKES_ABBREVIATED = "handshakes.abbreviated";
+	public static final String FLIGHTS_RETRANSMITTED = "flights.retransmitted";
+	public static final String RECORDS_ECHOED = "records.echoed";
+	public static final String BYTES_IN = "bytes.in";
+	public static final String BYTES_OUT = "bytes.out";
+	public static final String RESETS = "resets";
+	public static final String HANDSHAKE_LATENCY = "handshake.latency";
+	public static final String RESET_LATENCY = "reset.latency";
+
+	private static final Metrics REGISTRY = new Metrics();
+
+	private final ConcurrentMap<String, LongAdder> counters = new ConcurrentHashMap<>();
+	private final ConcurrentMap<String, LatencyHistogram> histograms = new ConcurrentHashMap<>();
+
+	private Metrics() {
+		// registered up front, so that a snapshot always lists them
+		for (String name : new String[] { HANDSHAKES_STARTED, HANDSHAKES_COMPLETED, HANDSHAKES_FAILED,
+				FLIGHTS_RETRANSMITTED, RECORDS_ECHOED, BYTES_IN, BYTES_OUT, RESETS }) {
+			counter(name);
+		}
+		histogram(HANDSHAKE_LATENCY);
+		histogram(RESET_LATENCY);
+	}
+
+	public static Metrics registry() {
+		return REGISTRY;
+	}
+
+	public LongAdder counter(String name) {
+		return counters.computeIfAbsent(name, key -> new LongAdder());
+	}
+
+	public LatencyHistogram histogram(String name) {
+		return histograms.computeIfAbsent(name, key -> new LatencyHistogram());
+	}
+
+	/**
+	 * @return all counters, followed by the count, percentiles (in
+	 *         milliseconds) and maximum of each histogram
+	 */
+	public String snapshot() {
+		StringBuilder line = new StringBuilder();
+		for (Map.Entry<String, LongAdder> counter : new TreeMap<>(counters).entrySet()) {
+			line.append(counter.getKey()).append('=').append(counter.getValue().sum()).append(' ');
+		}
+		for (Map.Entry<String, LatencyHistogram> entry : new TreeMap<>(histograms).entrySet()) {
+			String name = entry.getKey();
+			LatencyHistogram histogram = entry.getValue();
+			line.append(name).append(".count=").append(histogram.getCount()).append(' ');
+			line.append(String.format(Locale.ROOT, "%s.p50=%.3f %s.p99=%.3f %s.p999=%.3f %s.max=%.3f ", name,
+					histogram.getQuantileMicros(0.5) / 1000.0, name, histogram.getQuantileMicros(0.99) / 1000.0,
+					name, histogram.getQuantileMicros(0.999) / 1000.0, name, histogram.getMaxMicros() / 1000.0));
+		}
+		return line.toString().trim();
+	}
+
+	/**
+	 * Appends a snapshot, prefixed by the current time in milliseconds, to the
+	 * given file every interval, until the JVM exits.
+	 */
+	public void dumpPeriodically(final String file, long intervalMillis) {
+		ScheduledExecutorService dumper = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread thread = new Thread(r, "MetricsDump");
+			thread.setDaemon(true);
+			return thread;
+		});
+		dumper.scheduleAtFixedRate(() -> {
+			try (Writer out = new FileWriter(file, true)) {
+				out.write(System.currentTimeMillis() + " " + snapshot() + "\n");
+			} catch (IOException e) {
+				LOG.warn("Could not dump the metrics to {}", file, e);
+			}
+		}, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+	}
+}
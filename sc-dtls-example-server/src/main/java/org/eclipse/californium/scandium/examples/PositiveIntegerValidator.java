@@ -0,0 +1,27 @@
+package org.eclipse.californium.scandium.examples;
+
+import com.beust.jcommander.IParameterValidator;
+import com.beust.jcommander.ParameterException;
+
+/**
+ * Accepts whole numbers from 1 up to {@link #getMaximum()}.
+ */
+public class PositiveIntegerValidator implements IParameterValidator {
+
+	@Override
+	public void validate(String name, String value) throws ParameterException {
+		long number;
+		try {
+			number = Long.parseLong(value);
+		} catch (NumberFormatException e) {
+			throw new ParameterException(name + " must be a number, not " + value);
+		}
+		if (number < 1 || number > getMaximum()) {
+			throw new ParameterException(name + " must be between 1 and " + getMaximum() + ", not " + value);
+		}
+	}
+
+	protected int getMaximum() {
+		return Integer.MAX_VALUE;
+	}
+}
@@ -0,0 +1,103 @@
+package org.eclipse.californium.scandium.examples;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Keeps a number of already built and started servers at hand, so that a reset
+ * only has to swap in a fresh server instead of building one from scratch.
+ * A background thread refills the pool whenever a server is taken out.
+ */
+public class ServerPool {
+	private static final Logger LOG = LoggerFactory.getLogger(ServerPool.class);
+	// the interval at which a waiting take() checks whether the refill thread is still alive
+	private static final long TAKE_POLL_MILLIS = 100;
+
+	private final Supplier<ExampleDTLSServer> serverBuilder;
+	private final BlockingQueue<ExampleDTLSServer> servers;
+	private final Thread filler;
+	private volatile boolean closed;
+	// why the refill thread died, if it did not just get closed
+	private volatile RuntimeException failure;
+
+	public ServerPool(Supplier<ExampleDTLSServer> serverBuilder, int depth) {
+		if (depth < 1) {
+			throw new IllegalArgumentException("Pool depth must be at least 1, was " + depth);
+		}
+		this.serverBuilder = serverBuilder;
+		this.servers = new LinkedBlockingQueue<>(depth);
+		this.filler = new Thread(this::fill, "ServerPool-filler");
+		this.filler.setDaemon(true);
+		this.filler.start();
+	}
+
+	/**
+	 * Takes a started server out of the pool, waiting for one to become
+	 * available if the pool has been drained. Should the refill thread have
+	 * died, the server is built in the calling thread instead, unless the
+	 * refill thread failed to build one, in which case its failure is thrown.
+	 */
+	public ExampleDTLSServer take() throws InterruptedException {
+		if (closed) {
+			throw new IllegalStateException("Server pool has been closed");
+		}
+		ExampleDTLSServer server = servers.poll();
+		while (server == null && filler.isAlive()) {
+			server = servers.poll(TAKE_POLL_MILLIS, TimeUnit.MILLISECONDS);
+		}
+		if (server == null) {
+			// the refill thread may have put a last server before it died
+			server = servers.poll();
+		}
+		if (server == null) {
+			if (failure != null) {
+				throw new IllegalStateException("Server pool could not build a server", failure);
+			}
+			server = serverBuilder.get();
+			server.startServer();
+		}
+		return server;
+	}
+
+	/**
+	 * Stops the refill thread and any server still waiting in the pool.
+	 */
+	public void close() {
+		closed = true;
+		filler.interrupt();
+		ExampleDTLSServer server;
+		while ((server = servers.poll()) != null) {
+			server.stopServer();
+		}
+	}
+
+	private void fill() {
+		try {
+			while (!closed) {
+				ExampleDTLSServer server = serverBuilder.get();
+				server.startServer();
+				try {
+					// blocks while the pool is full
+					servers.put(server);
+				} catch (InterruptedException e) {
+					server.stopServer();
+					throw e;
+				}
+				if (closed) {
+					// close() may have drained the pool before our put
+					close();
+				}
+			}
+		} catch (InterruptedException e) {
+			LOG.debug("Server pool filler interrupted");
+		} catch (RuntimeException e) {
+			LOG.error("Could not pre-build server", e);
+			failure = e;
+		}
+	}
+}
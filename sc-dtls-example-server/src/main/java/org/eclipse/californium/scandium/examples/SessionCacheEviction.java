@@ -0,0 +1,14 @@
+package org.eclipse.californium.scandium.examples;
+
+public enum SessionCacheEviction {
+	/**
+	 * A full cache drops the session resumed least recently.
+	 */
+	LRU,
+
+	/**
+	 * A full cache drops the session established first, regardless of
+	 * resumptions.
+	 */
+	FIFO
+}
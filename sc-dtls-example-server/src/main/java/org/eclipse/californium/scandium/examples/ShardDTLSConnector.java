@@ -0,0 +1,91 @@
+package org.eclipse.californium.scandium.examples;
+
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetSocketAddress;
+import java.net.SocketOption;
+import java.net.StandardSocketOptions;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.eclipse.californium.scandium.DTLSConnector;
+import org.eclipse.californium.scandium.config.DtlsConnectorConfig;
+import org.eclipse.californium.scandium.dtls.Handshaker;
+import org.eclipse.californium.scandium.dtls.ResumptionSupportingConnectionStore;
+
+/**
+ * One of several connectors bound to the same port with SO_REUSEPORT, so that
+ * the kernel spreads peers across them by their address. A peer keeps being
+ * served by the same shard as long as its address does not change.
+ *
+ * Each shard additionally counts its datagrams, bytes and handshakes as
+ * {@code shard.<index>.<name>}.
+ */
+public class ShardDTLSConnector extends MeteredDTLSConnector {
+	private final DTLSConnector first;
+	private final LongAdder datagramsIn;
+	private final LongAdder bytesIn;
+	private final LongAdder handshakesStarted;
+
+	/**
+	 * @param index the shard's index, used in the names of its counters
+	 * @param first the shard started first, whose port is taken if none is
+	 *            configured, or {@code null} for the first shard itself
+	 */
+	public ShardDTLSConnector(DtlsConnectorConfig configuration, ResumptionSupportingConnectionStore connectionStore,
+			int index, DTLSConnector first) {
+		super(configuration, connectionStore);
+		this.first = first;
+		Metrics metrics = Metrics.registry();
+		String prefix = "shard." + index + ".";
+		datagramsIn = metrics.counter(prefix + "datagrams.in");
+		bytesIn = metrics.counter(prefix + Metrics.BYTES_IN);
+		handshakesStarted = metrics.counter(prefix + Metrics.HANDSHAKES_STARTED);
+	}
+
+	@Override
+	protected void start(InetSocketAddress bindAddress) throws IOException {
+		if (first != null && bindAddress.getPort() == 0) {
+			// an ephemeral port is only chosen once, all further shards share it
+			bindAddress = new InetSocketAddress(bindAddress.getAddress(), first.getAddress().getPort());
+		}
+		super.start(bindAddress);
+	}
+
+	@Override
+	protected void init(InetSocketAddress bindAddress, DatagramSocket socket, Integer mtu) throws IOException {
+		if (!socket.isBound()) {
+			reusePort(socket);
+		}
+		super.init(bindAddress, socket, mtu);
+	}
+
+	@Override
+	protected void onInitializeHandshaker(Handshaker handshaker) {
+		super.onInitializeHandshaker(handshaker);
+		handshakesStarted.increment();
+	}
+
+	@Override
+	protected void processDatagram(DatagramPacket packet) {
+		datagramsIn.increment();
+		bytesIn.add(packet.getLength());
+		super.processDatagram(packet);
+	}
+
+	/**
+	 * Enables SO_REUSEPORT, which is only available from Java 9 on and not on
+	 * every platform.
+	 */
+	private static void reusePort(DatagramSocket socket) throws IOException {
+		try {
+			Object option = StandardSocketOptions.class.getField("SO_REUSEPORT").get(null);
+			DatagramSocket.class.getMethod("setOption", SocketOption.class, Object.class).invoke(socket, option, true);
+		} catch (InvocationTargetException e) {
+			throw new IOException("SO_REUSEPORT is not supported", e.getCause());
+		} catch (ReflectiveOperationException e) {
+			throw new IOException("SO_REUSEPORT needs Java 9 or later", e);
+		}
+	}
+}
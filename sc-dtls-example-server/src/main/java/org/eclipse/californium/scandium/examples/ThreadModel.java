@@ -0,0 +1,210 @@
+package org.eclipse.californium.scandium.examples;
+
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.eclipse.californium.scandium.config.DtlsConnectorConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Sizes the connector's receiver and connection threads and creates the
+ * executor injected into it. Thread counts which are not configured are
+ * derived from the number of available processors. As all receiver threads
+ * read from the same socket, a few of them suffice even on large machines.
+ */
+public final class ThreadModel {
+	private static final Logger LOG = LoggerFactory.getLogger(ThreadModel.class);
+
+	private ThreadModel() {
+	}
+
+	public static int receiverThreads(Integer configured) {
+		if (configured != null) {
+			return configured;
+		}
+		return Math.max(1, Runtime.getRuntime().availableProcessors() / 4);
+	}
+
+	public static int connectionThreads(Integer configured) {
+		if (configured != null) {
+			return configured;
+		}
+		return Runtime.getRuntime().availableProcessors();
+	}
+
+	public static void configure(DtlsConnectorConfig.Builder builder, Integer receiverThreads,
+			Integer connectionThreads) {
+		builder.setReceiverThreadCount(receiverThreads(receiverThreads));
+		builder.setConnectionThreadCount(connectionThreads(connectionThreads));
+	}
+
+	/**
+	 * Creates the executor to inject into a connector. The caller owns it and
+	 * has to shut it down, the connector does not.
+	 *
+	 * @return the executor, or {@code null} if the connector is to create its
+	 *         own pool
+	 */
+	public static ExecutorService createExecutor(ConnectorExecutor type, Integer connectionThreads) {
+		switch (type) {
+		case FIXED:
+			return Executors.newFixedThreadPool(connectionThreads(connectionThreads), daemonThreads("DTLS-Connection-"));
+		case VIRTUAL:
+			try {
+				// looked up reflectively, as we still compile for Java 8
+				return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+			} catch (ReflectiveOperationException e) {
+				LOG.warn("Virtual threads are not available on Java {}, using the connector's own pool",
+						System.getProperty("java.version"));
+				return null;
+			}
+		default:
+			return null;
+		}
+	}
+
+	/**
+	 * Creates an executor to be shared by all connectors of the process, so
+	 * that starting and stopping a connector only starts and ends its receiver
+	 * threads. Unless virtual threads are used, it is a scheduled pool, which
+	 * the connectors then also use as their timer instead of creating one.
+	 */
+	public static ExecutorService createSharedExecutor(ConnectorExecutor type, Integer connectionThreads) {
+		if (type == ConnectorExecutor.VIRTUAL) {
+			ExecutorService executor = createExecutor(type, connectionThreads);
+			if (executor != null) {
+				return executor;
+			}
+		}
+		return Executors.newScheduledThreadPool(connectionThreads(connectionThreads), daemonThreads("DTLS-Shared-"));
+	}
+
+	/**
+	 * Wraps the executor a server or client runs its connectors on, counting
+	 * the tasks submitted through the wrapper and not completed yet. As the
+	 * executor is shared by all servers of a thread starter, each of them can
+	 * so tell whether its own records are processed. Tasks scheduled for
+	 * later, as the retransmission timers, are not counted. A scheduled
+	 * executor stays one, so the connectors still use it as their timer.
+	 *
+	 * @return the wrapper, or {@code null} if {@code null} is given
+	 */
+	public static ExecutorService track(ExecutorService executor) {
+		if (executor instanceof ScheduledExecutorService) {
+			return new CountingScheduledExecutor((ScheduledExecutorService) executor);
+		}
+		return executor == null ? null : new CountingExecutor(executor);
+	}
+
+	/**
+	 * @return {@code true} if no task submitted through the given executor,
+	 *         returned by {@link #track(ExecutorService)}, is pending, or if
+	 *         that can't be told, as for a connector's own pool
+	 */
+	public static boolean isIdle(ExecutorService executor) {
+		return !(executor instanceof CountingExecutor) || ((CountingExecutor) executor).pending.get() == 0;
+	}
+
+	/**
+	 * Counts the tasks submitted and not yet completed. Shutting it down shuts
+	 * down the wrapped executor.
+	 */
+	private static class CountingExecutor extends AbstractExecutorService {
+		private final ExecutorService executor;
+		private final AtomicInteger pending = new AtomicInteger();
+
+		private CountingExecutor(ExecutorService executor) {
+			this.executor = executor;
+		}
+
+		@Override
+		public void execute(Runnable task) {
+			pending.incrementAndGet();
+			try {
+				executor.execute(() -> {
+					try {
+						task.run();
+					} finally {
+						pending.decrementAndGet();
+					}
+				});
+			} catch (RuntimeException e) {
+				pending.decrementAndGet();
+				throw e;
+			}
+		}
+
+		@Override
+		public void shutdown() {
+			executor.shutdown();
+		}
+
+		@Override
+		public List<Runnable> shutdownNow() {
+			return executor.shutdownNow();
+		}
+
+		@Override
+		public boolean isShutdown() {
+			return executor.isShutdown();
+		}
+
+		@Override
+		public boolean isTerminated() {
+			return executor.isTerminated();
+		}
+
+		@Override
+		public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+			return executor.awaitTermination(timeout, unit);
+		}
+	}
+
+	private static class CountingScheduledExecutor extends CountingExecutor implements ScheduledExecutorService {
+		private final ScheduledExecutorService executor;
+
+		private CountingScheduledExecutor(ScheduledExecutorService executor) {
+			super(executor);
+			this.executor = executor;
+		}
+
+		@Override
+		public ScheduledFuture<?> schedule(Runnable command, long delay, TimeUnit unit) {
+			return executor.schedule(command, delay, unit);
+		}
+
+		@Override
+		public <V> ScheduledFuture<V> schedule(Callable<V> callable, long delay, TimeUnit unit) {
+			return executor.schedule(callable, delay, unit);
+		}
+
+		@Override
+		public ScheduledFuture<?> scheduleAtFixedRate(Runnable command, long initialDelay, long period, TimeUnit unit) {
+			return executor.scheduleAtFixedRate(command, initialDelay, period, unit);
+		}
+
+		@Override
+		public ScheduledFuture<?> scheduleWithFixedDelay(Runnable command, long initialDelay, long delay,
+				TimeUnit unit) {
+			return executor.scheduleWithFixedDelay(command, initialDelay, delay, unit);
+		}
+	}
+
+	private static ThreadFactory daemonThreads(String prefix) {
+		AtomicInteger index = new AtomicInteger();
+		return r -> {
+			Thread thread = new Thread(r, prefix + index.getAndIncrement());
+			thread.setDaemon(true);
+			return thread;
+		};
+	}
+}
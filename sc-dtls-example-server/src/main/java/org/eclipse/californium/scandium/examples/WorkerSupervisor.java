@@ -0,0 +1,523 @@
+package org.eclipse.californium.scandium.examples;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Runs the learners' servers or clients in separate worker processes, so that
+ * a learner crashing or exhausting its process does not take the others
+ * along, while still using all cores of the machine.
+ *
+ * Each worker is a JVM running the given main class behind its own
+ * {@link ThreadStarter}, listening at the port following the supervisor's
+ * port by the worker's index plus one. On Linux the workers are pinned to
+ * their own CPU sets with {@code taskset}, split from the CPUs the supervisor
+ * may run on. Workers which exit or whose resident memory grows beyond the
+ * limit are restarted, those exiting right after their start with a growing
+ * delay.
+ *
+ * The supervisor listens at the starter address itself and relays each
+ * learner connection to the worker serving the fewest learners. It does not
+ * look into the relayed commands, so all thread starter protocols pass.
+ * Learners relayed to a worker which is restarted lose their connection, as
+ * they would with a crashing thread starter. If no worker accepts a learner,
+ * it is answered "busy", as a frame if the workers' thread starters are
+ * framed.
+ */
+public class WorkerSupervisor {
+	private static final Logger LOG = LoggerFactory.getLogger(WorkerSupervisor.class);
+	private static final long CONNECT_DEADLINE_MILLIS = 10000;
+	private static final long CONNECT_RETRY_MILLIS = 100;
+	// a worker exiting within this time after its start is restarted only after a delay, so a broken command
+	// line does not spin, doubled for each such exit in a row up to the maximum
+	private static final long STABLE_MILLIS = 10000;
+	private static final long RESTART_DELAY_MILLIS = 1000;
+	private static final long MAX_RESTART_DELAY_MILLIS = 60000;
+	private static final int RELAY_BUFFER_SIZE = 8192;
+	// the supervisor's options, with their number of values, -1 for all up to the next option
+	private static final Map<String, Integer> SUPERVISOR_OPTIONS = new HashMap<>();
+	// options naming files, which each worker gets its own of
+	private static final List<String> FILE_OPTIONS = Arrays.asList("-statsFile", "-traceFile");
+
+	static {
+		SUPERVISOR_OPTIONS.put("-workers", 1);
+		SUPERVISOR_OPTIONS.put("-workerCpus", -1);
+		SUPERVISOR_OPTIONS.put("-workerMaxRss", 1);
+		SUPERVISOR_OPTIONS.put("-workerCheckInterval", 1);
+		SUPERVISOR_OPTIONS.put("-starterAddress", 1);
+		SUPERVISOR_OPTIONS.put("-continuous", 0);
+	}
+
+	private final String mainClass;
+	private final ServerSocket frontDoor;
+	private final List<Worker> workers = new ArrayList<>();
+	private final long maxRssBytes;
+	private final long checkIntervalMillis;
+	private final boolean framed;
+	private volatile boolean stopped;
+
+	/**
+	 * @param mainClass the class run by the workers
+	 * @param args the command line of the supervisor, which the workers get
+	 *            without the supervisor's options
+	 * @param starterAddress the address learners connect to
+	 * @param workerCount the number of workers
+	 * @param cpuSets the CPU set of each worker in {@code taskset} notation,
+	 *            the allowed CPUs are split among the workers if none are
+	 *            given
+	 * @param maxRssMegabytes the resident memory at which a worker is
+	 *            restarted, 0 to not restart workers for their memory
+	 * @param checkIntervalMillis the interval at which the workers are checked
+	 * @param framed whether the workers' thread starters are framed, see
+	 *            {@link CommandFrames}
+	 */
+	public WorkerSupervisor(String mainClass, String[] args, String starterAddress, int workerCount,
+			List<String> cpuSets, long maxRssMegabytes, long checkIntervalMillis, boolean framed) throws IOException {
+		this.mainClass = mainClass;
+		this.framed = framed;
+		this.maxRssBytes = maxRssMegabytes * 1024 * 1024;
+		this.checkIntervalMillis = checkIntervalMillis;
+		String[] addr = starterAddress.split("\\:");
+		int port = Integer.parseInt(addr[1]);
+		frontDoor = new ServerSocket();
+		frontDoor.setReuseAddress(true);
+		frontDoor.bind(new InetSocketAddress(addr[0], port));
+		if (cpuSets == null || cpuSets.isEmpty()) {
+			cpuSets = splitProcessors(workerCount);
+		} else if (cpuSets.size() != workerCount) {
+			throw new IllegalArgumentException(
+					cpuSets.size() + " CPU sets given for " + workerCount + " workers");
+		}
+		boolean pinned = cpuSets != null && isTasksetAvailable();
+		if (cpuSets != null && !pinned) {
+			LOG.warn("taskset is not available, the workers are not pinned to CPUs");
+		}
+		for (int index = 0; index < workerCount; index++) {
+			String workerAddress = addr[0] + ":" + (port + 1 + index);
+			workers.add(new Worker(index, workerAddress, workerArgs(args, index, workerAddress),
+					pinned ? cpuSets.get(index) : null));
+		}
+	}
+
+	/**
+	 * @return the command line of a worker, the given one without the
+	 *         supervisor's options and with its own thread starter and files
+	 */
+	static List<String> workerArgs(String[] args, int index, String workerAddress) {
+		List<String> workerArgs = new ArrayList<>();
+		for (int i = 0; i < args.length; i++) {
+			Integer arity = SUPERVISOR_OPTIONS.get(args[i]);
+			if (arity == null) {
+				workerArgs.add(args[i]);
+				if (FILE_OPTIONS.contains(args[i]) && i + 1 < args.length) {
+					workerArgs.add(args[++i] + "." + index);
+				}
+			} else if (arity < 0) {
+				while (i + 1 < args.length && !args[i + 1].startsWith("-")) {
+					i++;
+				}
+			} else {
+				i += arity;
+			}
+		}
+		workerArgs.add("-starterAddress");
+		workerArgs.add(workerAddress);
+		// a worker serves learner after learner
+		workerArgs.add("-continuous");
+		return workerArgs;
+	}
+
+	/**
+	 * @return CPU sets of equal size of the allowed CPUs, or {@code null} if
+	 *         there are fewer CPUs than workers
+	 */
+	static List<String> splitProcessors(int workerCount) {
+		List<Integer> cpus = allowedCpus();
+		if (cpus.size() < workerCount) {
+			LOG.warn("{} workers on {} processors are not pinned to CPUs", workerCount, cpus.size());
+			return null;
+		}
+		List<String> cpuSets = new ArrayList<>();
+		int size = cpus.size() / workerCount;
+		for (int index = 0; index < workerCount; index++) {
+			cpuSets.add(cpuList(cpus.subList(index * size, (index + 1) * size)));
+		}
+		return cpuSets;
+	}
+
+	/**
+	 * @return the CPUs this process may run on, which a cgroup or taskset may
+	 *         restrict to other ones than the first available processors, or
+	 *         those if it can't be told, as on other systems than Linux
+	 */
+	static List<Integer> allowedCpus() {
+		try {
+			for (String line : Files.readAllLines(Paths.get("/proc/self/status"))) {
+				if (line.startsWith("Cpus_allowed_list:")) {
+					// e.g. "0-3,8-11"
+					List<Integer> cpus = new ArrayList<>();
+					for (String range : line.substring(line.indexOf(':') + 1).trim().split(",")) {
+						String[] bounds = range.split("-");
+						int last = Integer.parseInt(bounds[bounds.length - 1]);
+						for (int cpu = Integer.parseInt(bounds[0]); cpu <= last; cpu++) {
+							cpus.add(cpu);
+						}
+					}
+					return cpus;
+				}
+			}
+		} catch (IOException | RuntimeException e) {
+			LOG.debug("Could not tell the allowed CPUs", e);
+		}
+		List<Integer> cpus = new ArrayList<>();
+		for (int cpu = 0; cpu < Runtime.getRuntime().availableProcessors(); cpu++) {
+			cpus.add(cpu);
+		}
+		return cpus;
+	}
+
+	/**
+	 * @return the ascending CPUs in {@code taskset} notation, with ranges for
+	 *         consecutive ones
+	 */
+	static String cpuList(List<Integer> cpus) {
+		StringBuilder list = new StringBuilder();
+		for (int i = 0; i < cpus.size(); i++) {
+			int first = cpus.get(i);
+			while (i + 1 < cpus.size() && cpus.get(i + 1) == cpus.get(i) + 1) {
+				i++;
+			}
+			if (list.length() > 0) {
+				list.append(',');
+			}
+			list.append(first);
+			if (cpus.get(i) != first) {
+				list.append('-').append(cpus.get(i));
+			}
+		}
+		return list.toString();
+	}
+
+	private static boolean isTasksetAvailable() {
+		String path = System.getenv("PATH");
+		if (path == null) {
+			return false;
+		}
+		for (String directory : path.split(File.pathSeparator)) {
+			if (Files.isExecutable(Paths.get(directory, "taskset"))) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Starts the workers and relays learners to them until the process is
+	 * interrupted.
+	 */
+	public void run() throws IOException {
+		Runtime.getRuntime().addShutdownHook(new Thread(this::stop, "WorkerSupervisor-Stop"));
+		for (Worker worker : workers) {
+			worker.start();
+		}
+		Thread monitor = new Thread(this::monitor, "WorkerSupervisor-Monitor");
+		monitor.setDaemon(true);
+		monitor.start();
+		LOG.info("Supervising {} workers, listening at {}", workers.size(), frontDoor.getLocalSocketAddress());
+		while (!stopped) {
+			Socket learner;
+			try {
+				learner = frontDoor.accept();
+			} catch (IOException e) {
+				if (stopped) {
+					return;
+				}
+				throw e;
+			}
+			new Thread(() -> relay(learner), "FrontDoor-" + learner.getPort()).start();
+		}
+	}
+
+	public void stop() {
+		stopped = true;
+		try {
+			frontDoor.close();
+		} catch (IOException e) {
+			LOG.debug("Could not close the front door", e);
+		}
+		for (Worker worker : workers) {
+			worker.destroy();
+		}
+	}
+
+	private void monitor() {
+		while (!stopped) {
+			for (Worker worker : workers) {
+				worker.check();
+			}
+			try {
+				Thread.sleep(checkIntervalMillis);
+			} catch (InterruptedException e) {
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Connects the learner to the least loaded worker accepting it and relays
+	 * between them until either side closes.
+	 */
+	private void relay(Socket learner) {
+		Worker worker = null;
+		Socket workerSocket = null;
+		long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(CONNECT_DEADLINE_MILLIS);
+		try {
+			// workers being started do not accept yet
+			while (workerSocket == null && !stopped && System.nanoTime() < deadline) {
+				List<Worker> tried = new ArrayList<>();
+				while (workerSocket == null && (worker = reserve(tried)) != null) {
+					try {
+						workerSocket = worker.connect();
+					} catch (IOException e) {
+						LOG.debug("Worker {} does not accept learners", worker.index);
+						worker.learners.decrementAndGet();
+						tried.add(worker);
+					}
+				}
+				if (workerSocket == null) {
+					Thread.sleep(CONNECT_RETRY_MILLIS);
+				}
+			}
+			if (workerSocket == null) {
+				LOG.warn("Rejecting learner at {}, no worker accepts it", learner.getRemoteSocketAddress());
+				OutputStream out = learner.getOutputStream();
+				out.write(CommandFrames.busy(framed));
+				out.flush();
+				return;
+			}
+			LOG.info("Relaying learner at {} to worker {}", learner.getRemoteSocketAddress(), worker.index);
+			try {
+				Socket toWorker = workerSocket;
+				Thread back = new Thread(() -> pump(toWorker, learner), Thread.currentThread().getName() + "-Back");
+				back.start();
+				pump(learner, workerSocket);
+				back.join();
+			} finally {
+				worker.learners.decrementAndGet();
+			}
+		} catch (IOException e) {
+			LOG.debug("Could not relay learner at {}", learner.getRemoteSocketAddress(), e);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} finally {
+			close(learner);
+			if (workerSocket != null) {
+				close(workerSocket);
+			}
+		}
+	}
+
+	/**
+	 * Counts a learner for the least loaded worker not tried yet, so that
+	 * learners arriving at the same time are spread over the workers.
+	 *
+	 * @return the worker, or {@code null} if all were tried
+	 */
+	private Worker reserve(List<Worker> tried) {
+		synchronized (workers) {
+			Worker least = null;
+			for (Worker worker : workers) {
+				if (!tried.contains(worker) && (least == null || worker.learners.get() < least.learners.get())) {
+					least = worker;
+				}
+			}
+			if (least != null) {
+				least.learners.incrementAndGet();
+			}
+			return least;
+		}
+	}
+
+	/**
+	 * Copies from one socket to the other until the first is closed, which
+	 * then closes the other.
+	 */
+	private static void pump(Socket from, Socket to) {
+		byte[] buffer = new byte[RELAY_BUFFER_SIZE];
+		try {
+			InputStream in = from.getInputStream();
+			OutputStream out = to.getOutputStream();
+			int length;
+			while ((length = in.read(buffer)) >= 0) {
+				out.write(buffer, 0, length);
+				out.flush();
+			}
+		} catch (IOException e) {
+			LOG.trace("Relay ended", e);
+		} finally {
+			close(from);
+			close(to);
+		}
+	}
+
+	private static void close(Socket socket) {
+		try {
+			socket.close();
+		} catch (IOException e) {
+			LOG.trace("Could not close socket", e);
+		}
+	}
+
+	/**
+	 * A worker process, restarted by {@link #check()} when it exits or leaks.
+	 */
+	private class Worker {
+		private final int index;
+		private final InetSocketAddress address;
+		private final List<String> command = new ArrayList<>();
+		private final AtomicInteger learners = new AtomicInteger();
+		private volatile Process process;
+		private long startNanos;
+		// when the worker was found to have exited, 0 while it runs
+		private long exitNanos;
+		private int quickExits;
+		private int restarts;
+
+		private Worker(int index, String address, List<String> args, String cpuSet) {
+			this.index = index;
+			String[] addr = address.split("\\:");
+			this.address = new InetSocketAddress(addr[0], Integer.parseInt(addr[1]));
+			if (cpuSet != null) {
+				command.add("taskset");
+				command.add("-c");
+				command.add(cpuSet);
+			}
+			command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+			String logbackConfiguration = System.getProperty("logback.configurationFile");
+			if (logbackConfiguration != null) {
+				command.add("-Dlogback.configurationFile=" + logbackConfiguration);
+			}
+			command.add("-cp");
+			command.add(System.getProperty("java.class.path"));
+			command.add(mainClass);
+			command.addAll(args);
+		}
+
+		private synchronized void start() throws IOException {
+			startNanos = System.nanoTime();
+			exitNanos = 0;
+			process = new ProcessBuilder(command).inheritIO().start();
+			LOG.info("Started worker {} at {}: {}", index, address, command);
+		}
+
+		private synchronized void check() {
+			if (stopped) {
+				return;
+			}
+			Process current = process;
+			String cause = null;
+			if (!current.isAlive()) {
+				long now = System.nanoTime();
+				if (exitNanos == 0) {
+					exitNanos = now;
+					quickExits = now - startNanos < TimeUnit.MILLISECONDS.toNanos(STABLE_MILLIS) ? quickExits + 1 : 0;
+					if (quickExits > 0) {
+						LOG.warn("Worker {} exited with {} right after its start, {} times in a row, restarting it in {} ms",
+								index, current.exitValue(), quickExits, restartDelayMillis());
+					}
+				}
+				if (now - exitNanos < TimeUnit.MILLISECONDS.toNanos(restartDelayMillis())) {
+					return;
+				}
+				cause = "exited with " + current.exitValue();
+			} else if (maxRssBytes > 0) {
+				long rss = residentBytes(current);
+				if (rss > maxRssBytes) {
+					cause = "uses " + rss / 1024 / 1024 + " MB";
+					destroy();
+				}
+			}
+			if (cause != null) {
+				restarts++;
+				LOG.warn("Worker {} {}, restarting it ({} restarts)", index, cause, restarts);
+				try {
+					start();
+				} catch (IOException e) {
+					LOG.error("Could not restart worker {}", index, e);
+				}
+			}
+		}
+
+		/**
+		 * @return the delay before restarting the worker, growing with each
+		 *         exit right after its start
+		 */
+		private long restartDelayMillis() {
+			if (quickExits == 0) {
+				return 0;
+			}
+			return Math.min(RESTART_DELAY_MILLIS << Math.min(quickExits - 1, 16), MAX_RESTART_DELAY_MILLIS);
+		}
+
+		private Socket connect() throws IOException {
+			Socket socket = new Socket();
+			try {
+				socket.connect(address);
+			} catch (IOException e) {
+				socket.close();
+				throw e;
+			}
+			return socket;
+		}
+
+		private void destroy() {
+			Process current = process;
+			if (current != null && current.isAlive()) {
+				current.destroy();
+				try {
+					if (!current.waitFor(5, TimeUnit.SECONDS)) {
+						current.destroyForcibly();
+					}
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+		}
+	}
+
+	/**
+	 * @return the resident memory of the process, or 0 if it can't be told,
+	 *         as on other systems than Linux
+	 */
+	private static long residentBytes(Process process) {
+		try {
+			// looked up reflectively, as we still compile for Java 8
+			long pid = (Long) Process.class.getMethod("pid").invoke(process);
+			for (String line : Files.readAllLines(Paths.get("/proc", Long.toString(pid), "status"))) {
+				if (line.startsWith("VmRSS:")) {
+					return Long.parseLong(line.replaceAll("\\D", "")) * 1024;
+				}
+			}
+		} catch (ReflectiveOperationException | IOException | RuntimeException e) {
+			LOG.debug("Could not tell the resident memory of a worker", e);
+		}
+		return 0;
+	}
+}